@@ -0,0 +1,113 @@
+package com.full_webapp.vsapp;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Service and repository read paths against an in-memory H2 seeded with the given number of contacts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx4g"})
+public class ContactServiceBenchmark {
+  private static final int PAGE = 50;
+  private static final Sort DEEP_SORT = Sort.by("lastName");
+
+  @Param({"10000", "100000", "1000000"})
+  private int rows;
+
+  @Param({"true", "false"})
+  private boolean trigramIndex;
+
+  @Param({"first4242"})
+  private String searchTerm;
+
+  // every iteration repeats the same query, with the query cache on the searches and pages are cache hits
+  @Param({"false", "true"})
+  private boolean queryCache;
+
+  private ConfigurableApplicationContext context;
+  private ContactService contactService;
+  private ContactRepository contactRepository;
+  private CompanyService companyService;
+  private KeysetCursor deepCursor;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+	context = new SpringApplicationBuilder(VsappApplication.class)
+		  .properties(
+				"server.port=0",
+				"vaadin.productionMode=true",
+				"spring.datasource.url=jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+				"spring.datasource.username=sa",
+				"spring.datasource.password=",
+				"spring.main.banner-mode=off",
+				"logging.level.root=warn",
+				"custom.value.seed.companies=3",
+				"custom.value.seed.contacts=0",
+				"custom.value.seed.background=false",
+				"custom.value.search.trigram-index=" + trigramIndex,
+				"spring.jpa.properties.hibernate.cache.use_query_cache=" + queryCache)
+		  .run();
+	contactService = context.getBean(ContactService.class);
+	contactRepository = context.getBean(ContactRepository.class);
+	companyService = context.getBean(CompanyService.class);
+	seed(context.getBean(JdbcTemplate.class));
+	context.getBean(ContactSearchIndex.class).build();
+	deepCursor = KeysetCursor.after(DEEP_SORT, contactService.fetch(null, deepOffset() - 1, 1, DEEP_SORT).get(0));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+	context.close();
+  }
+
+  @Benchmark
+  public List<Contact> findAllFiltered() {
+	return contactService.findAll(searchTerm);
+  }
+
+  @Benchmark
+  public List<Contact> repositorySearch() {
+	return contactRepository.search(searchTerm);
+  }
+
+  // the same page near the end of the listing, reached by offset and by keyset
+  @Benchmark
+  public List<ContactRow> deepPageOffset() {
+	return contactService.fetch(null, deepOffset(), PAGE, DEEP_SORT);
+  }
+
+  @Benchmark
+  public List<ContactRow> deepPageKeyset() {
+	return contactService.seek(null, deepCursor, PAGE).getContent();
+  }
+
+  @Benchmark
+  public void companyStats(Blackhole blackhole) {
+	blackhole.consume(companyService.getStats());
+  }
+
+  private int deepOffset() {
+	return rows - PAGE;
+  }
+
+  // ids start far above the pooled sequence so seeded rows never collide with generated ones
+  private void seed(JdbcTemplate jdbcTemplate) {
+	List<Long> companies = jdbcTemplate.queryForList("select id from company order by id", Long.class);
+	jdbcTemplate.update("insert into contact (id, first_name, last_name, email, status, company_id) " +
+		  "select 1000000000 + x, 'First' || x, 'Last' || x, 'first' || x || '@bench.com', 'Customer', " +
+		  "case mod(x, 3) when 0 then ? when 1 then ? else ? end " +
+		  "from system_range(1, ?)", companies.get(0), companies.get(1), companies.get(2), rows);
+  }
+}
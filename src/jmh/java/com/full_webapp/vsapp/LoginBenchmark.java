@@ -0,0 +1,49 @@
+package com.full_webapp.vsapp;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.cache.NullUserCache;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Logins per second through the same DaoAuthenticationProvider setup as SecurityConfiguration,
+ * with and without the user and verified-credential caches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class LoginBenchmark {
+
+  @Param({"true", "false"})
+  private boolean cached;
+
+  private DaoAuthenticationProvider provider;
+
+  @Setup
+  public void setUp() {
+	PasswordEncoder passwordEncoder = cached
+		  ? new CachingPasswordEncoder(10_000, 60)
+		  : PasswordEncoderFactories.createDelegatingPasswordEncoder();
+	provider = new DaoAuthenticationProvider();
+	provider.setPasswordEncoder(passwordEncoder);
+	provider.setUserCache(cached ? new CaffeineUserCache(10_000, 300) : new NullUserCache());
+	provider.setUserDetailsService(new InMemoryUserDetailsManager(
+		  User.withUsername("user").password(passwordEncoder.encode("password")).roles("USER").build()));
+  }
+
+  @Benchmark
+  public Authentication login() {
+	return provider.authenticate(new UsernamePasswordAuthenticationToken("user", "password"));
+  }
+}
@@ -0,0 +1,40 @@
+package com.full_webapp.vsapp;
+
+import com.vaadin.flow.server.ServletHelper;
+import com.vaadin.flow.shared.ApplicationConstants;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Runs for every secured request through the request matcher in SecurityConfiguration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecurityUtilsBenchmark {
+
+  @Param({"none", "uidl", "unknown"})
+  private String requestType;
+
+  private MockHttpServletRequest request;
+
+  @Setup
+  public void setUp() {
+	request = new MockHttpServletRequest("POST", "/");
+	if ("uidl".equals(requestType)) {
+	  request.setParameter(ApplicationConstants.REQUEST_TYPE_PARAMETER, ServletHelper.RequestType.UIDL.getIdentifier());
+	} else if ("unknown".equals(requestType)) {
+	  request.setParameter(ApplicationConstants.REQUEST_TYPE_PARAMETER, "unknown");
+	}
+  }
+
+  @Benchmark
+  public boolean isFrameworkInternalRequest() {
+	return SecurityUtils.isFrameworkInternalRequest(request);
+  }
+}
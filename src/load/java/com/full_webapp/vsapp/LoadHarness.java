@@ -0,0 +1,203 @@
+package com.full_webapp.vsapp;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Scripted users against the app on an embedded server and in-memory H2: log in through the login view,
+ * filter the contact list, open a row in the form and save it. Every action goes through the real HTTP
+ * and UIDL endpoints (see UidlClient) and is timed until the UI has the result, a filter until the grid
+ * received its new rows. Run with mvn -Pload verify -DskipTests -Dload.args="users=300 iterations=10";
+ * fails on any failed action or on a regression against src/load/resources/load-baseline.properties,
+ * update-baseline=true rewrites that file from the run.
+ */
+public class LoadHarness {
+  private static final String[] FILTERS = {"", "a", "son", "an", "Jack", "e", "ilsen", "Ry"};
+  private static final String USERNAME = "user";
+  private static final String PASSWORD = "password";
+  private static final long FILTER_TIMEOUT_MILLIS = 10_000;
+  private static final long POLL_MILLIS = 5;
+
+  private final int users;
+  private final int iterations;
+  private final long thinkMillis;
+  private final long rampMillis;
+
+  LoadHarness(int users, int iterations, long thinkMillis, long rampMillis) {
+	this.users = users;
+	this.iterations = iterations;
+	this.thinkMillis = thinkMillis;
+	this.rampMillis = rampMillis;
+  }
+
+  public static void main(String[] args) throws Exception {
+	Map<String, String> options = new HashMap<>();
+	for (String arg : args) {
+	  String[] option = arg.split("=", 2);
+	  options.put(option[0], option.length > 1 ? option[1] : "true");
+	}
+	int users = Integer.parseInt(options.getOrDefault("users", "100"));
+	int iterations = Integer.parseInt(options.getOrDefault("iterations", "5"));
+	long think = Long.parseLong(options.getOrDefault("think", "100"));
+	double tolerance = Double.parseDouble(options.getOrDefault("tolerance", "0.5"));
+	Path baseline = Paths.get(options.getOrDefault("baseline", "src/load/resources/load-baseline.properties"));
+	Path report = Paths.get(options.getOrDefault("report", "target/load-report.properties"));
+	String scenario = String.format("users=%d iterations=%d think=%d", users, iterations, think);
+	System.setProperty("http.maxConnections", String.valueOf(users));
+
+	int status;
+	try (ConfigurableApplicationContext context = start()) {
+	  String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+	  new LoadHarness(Math.min(users, 10), 2, 0, 0).run(baseUrl);
+
+	  LoadReport result = new LoadHarness(users, iterations, think, Long.parseLong(options.getOrDefault("ramp", "2000"))).run(baseUrl);
+	  Properties run = result.toProperties(scenario);
+	  LoadReport.store(run, report, "Load test run");
+	  System.out.printf("%nLoad test, %s%n%s", scenario, result.table());
+
+	  List<String> regressions = Files.exists(baseline)
+		  ? LoadReport.compare(run, LoadReport.load(baseline), tolerance)
+		  : Collections.singletonList("no baseline at " + baseline);
+	  if (Boolean.parseBoolean(options.getOrDefault("update-baseline", "false"))) {
+		LoadReport.store(run, baseline, "Load test baseline, regenerate with -Dload.args=\"update-baseline=true\"");
+		System.out.println("Baseline written to " + baseline);
+		regressions = Collections.emptyList();
+	  }
+	  regressions.forEach(regression -> System.out.println("REGRESSION " + regression));
+	  status = result.failures() > 0 || !regressions.isEmpty() ? 1 : 0;
+	}
+	System.exit(status);
+  }
+
+  private static ConfigurableApplicationContext start() {
+	System.setProperty("spring.devtools.restart.enabled", "false");
+	return new SpringApplicationBuilder(VsappApplication.class)
+		  .properties(
+				"server.port=0",
+				"management.server.port=0",
+				"vaadin.productionMode=true",
+				"spring.datasource.url=jdbc:h2:mem:load;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+				"spring.datasource.username=sa",
+				"spring.datasource.password=",
+				"spring.main.banner-mode=off",
+				"custom.value.seed.background=false",
+				"custom.value.security.default-user.username=" + USERNAME,
+				"custom.value.security.default-user.password=" + PASSWORD,
+				"logging.level.root=warn")
+		  .run();
+  }
+
+  LoadReport run(String baseUrl) throws InterruptedException {
+	LoadReport report = new LoadReport();
+	ExecutorService pool = Executors.newFixedThreadPool(users, DaemonThreads.of("load-user"));
+	for (int user = 0; user < users; user++) {
+	  long delay = rampMillis * user / users;
+	  Random random = new Random(user);
+	  pool.execute(() -> {
+		sleep(delay);
+		session(new UidlClient(baseUrl), random, report);
+	  });
+	}
+	pool.shutdown();
+	pool.awaitTermination(1, TimeUnit.HOURS);
+	report.finish();
+	return report;
+  }
+
+  private void session(UidlClient client, Random random, LoadReport report) {
+	if (!timed("login", report, () -> client.login(USERNAME, PASSWORD))) {
+	  return;
+	}
+	int filter = client.find("vaadin-text-field", node -> "Filter by name...".equals(node.property("placeholder")));
+	int grid = client.find("vaadin-grid", node -> true);
+
+	String previous = "";
+	for (int iteration = 0; iteration < iterations; iteration++) {
+	  think(random);
+	  String term = nextFilter(random, previous);
+	  previous = term;
+	  boolean filtered = timed("filter", report, () -> {
+		JsonNode response = client.sync(filter, "value", term, "value-changed");
+		long deadline = System.currentTimeMillis() + FILTER_TIMEOUT_MILLIS;
+		while (!UidlClient.calls(response, grid)) {
+		  if (System.currentTimeMillis() > deadline) {
+			throw new UidlClient.LoadFailure("grid not refreshed for filter '" + term + "'");
+		  }
+		  sleep(POLL_MILLIS);
+		  response = client.poll();
+		}
+	  });
+	  List<String> keys = client.gridKeys(grid);
+	  if (!filtered || keys.isEmpty()) {
+		continue;
+	  }
+
+	  think(random);
+	  String key = keys.get(random.nextInt(keys.size()));
+	  if (!timed("edit", report, () -> client.call(grid, "select", key))) {
+		continue;
+	  }
+	  think(random);
+	  timed("save", report, () -> {
+		// the hidden form's fields are only sent once the form is shown
+		int lastName = client.byLabel("vaadin-text-field", "Last name");
+		int save = client.byText("vaadin-button", "Save");
+		String value = client.property(lastName, "value")
+			  .orElseThrow(() -> new UidlClient.LoadFailure("form not filled for row " + key));
+		client.sync(lastName, "value", value.endsWith("~") ? value.substring(0, value.length() - 1) : value + "~", "change");
+		client.click(save);
+	  });
+	}
+  }
+
+  // the same value again is no change and the grid would not reload
+  private static String nextFilter(Random random, String previous) {
+	String term = FILTERS[1 + random.nextInt(FILTERS.length - 1)];
+	return term.equals(previous) ? FILTERS[0] : term;
+  }
+
+  private static boolean timed(String action, LoadReport report, Step step) {
+	long start = System.nanoTime();
+	try {
+	  step.run();
+	  report.record(action, System.nanoTime() - start);
+	  return true;
+	} catch (Exception | AssertionError e) {
+	  report.fail(action, e);
+	  return false;
+	}
+  }
+
+  private void think(Random random) {
+	if (thinkMillis > 0) {
+	  sleep(random.nextInt((int) thinkMillis));
+	}
+  }
+
+  private static void sleep(long millis) {
+	try {
+	  Thread.sleep(millis);
+	} catch (InterruptedException e) {
+	  Thread.currentThread().interrupt();
+	}
+  }
+
+  @FunctionalInterface
+  private interface Step {
+	void run() throws Exception;
+  }
+}
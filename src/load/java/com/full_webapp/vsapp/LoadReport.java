@@ -0,0 +1,147 @@
+package com.full_webapp.vsapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/*
+ * Latencies and failures per scripted action. Written as a properties file so a run can be diffed
+ * against the stored baseline: throughput may drop and percentiles may grow by the tolerance before
+ * the action counts as a regression.
+ */
+final class LoadReport {
+  private static final double[] PERCENTILES = {50, 95, 99};
+
+  private final Map<String, Action> actions = new ConcurrentHashMap<>();
+  private final long startNanos = System.nanoTime();
+  private volatile long endNanos;
+
+  void record(String action, long nanos) {
+	actions.computeIfAbsent(action, name -> new Action()).latencies.add(nanos);
+  }
+
+  void fail(String action, Throwable failure) {
+	Action recorded = actions.computeIfAbsent(action, name -> new Action());
+	if (recorded.failures.incrementAndGet() <= 3) {
+	  System.err.printf("%s failed: %s%n", action, failure);
+	}
+  }
+
+  void finish() {
+	endNanos = System.nanoTime();
+  }
+
+  int failures() {
+	return actions.values().stream().mapToInt(action -> action.failures.get()).sum();
+  }
+
+  Properties toProperties(String scenario) {
+	double seconds = (endNanos - startNanos) / 1e9;
+	Properties properties = new Properties();
+	properties.setProperty("scenario", scenario);
+	new TreeMap<>(actions).forEach((name, action) -> {
+	  long[] sorted = action.sorted();
+	  properties.setProperty(name + ".count", String.valueOf(sorted.length));
+	  properties.setProperty(name + ".failures", String.valueOf(action.failures.get()));
+	  properties.setProperty(name + ".throughput", String.format(Locale.ROOT, "%.1f", sorted.length / seconds));
+	  for (double percentile : PERCENTILES) {
+		properties.setProperty(name + ".p" + (int) percentile, String.format(Locale.ROOT, "%.1f", millis(sorted, percentile)));
+	  }
+	});
+	return properties;
+  }
+
+  // regressions of this run against the baseline, empty when the baseline is for another scenario
+  static List<String> compare(Properties run, Properties baseline, double tolerance) {
+	List<String> regressions = new ArrayList<>();
+	if (!run.getProperty("scenario").equals(baseline.getProperty("scenario"))) {
+	  System.out.printf("Baseline is for '%s', not comparing '%s'%n", baseline.getProperty("scenario"), run.getProperty("scenario"));
+	  return regressions;
+	}
+	for (String key : new TreeMap<>(baseline).keySet().toArray(new String[0])) {
+	  String metric = key.substring(key.lastIndexOf('.') + 1);
+	  if (!run.containsKey(key) || !(metric.startsWith("p") || metric.equals("throughput"))) {
+		continue;
+	  }
+	  double expected = Double.parseDouble(baseline.getProperty(key));
+	  double actual = Double.parseDouble(run.getProperty(key));
+	  boolean regressed = metric.equals("throughput")
+		  ? actual < expected / (1 + tolerance)
+		  : actual > expected * (1 + tolerance);
+	  if (regressed) {
+		regressions.add(String.format("%s: %s, baseline %s", key, run.getProperty(key), baseline.getProperty(key)));
+	  }
+	}
+	return regressions;
+  }
+
+  String table() {
+	Properties properties = toProperties("");
+	StringBuilder table = new StringBuilder(String.format("%-8s %8s %8s %10s %9s %9s %9s%n",
+		  "action", "count", "failures", "ops/s", "p50 ms", "p95 ms", "p99 ms"));
+	Function<String, String> value = key -> properties.getProperty(key, "-");
+	new TreeMap<>(actions).keySet().forEach(name -> table.append(String.format("%-8s %8s %8s %10s %9s %9s %9s%n",
+		  name, value.apply(name + ".count"), value.apply(name + ".failures"), value.apply(name + ".throughput"),
+		  value.apply(name + ".p50"), value.apply(name + ".p95"), value.apply(name + ".p99"))));
+	return table.toString();
+  }
+
+  static Properties load(Path path) throws IOException {
+	Properties properties = new Properties();
+	try (InputStream in = Files.newInputStream(path)) {
+	  properties.load(in);
+	}
+	return properties;
+  }
+
+  // keys sorted so that baseline updates diff cleanly
+  static void store(Properties properties, Path path, String comment) throws IOException {
+	Properties sorted = new Properties() {
+	  @Override
+	  public synchronized Enumeration<Object> keys() {
+		return Collections.enumeration(new TreeSet<>(keySet()));
+	  }
+	};
+	sorted.putAll(properties);
+	Files.createDirectories(path.toAbsolutePath().getParent());
+	try (OutputStream out = Files.newOutputStream(path)) {
+	  sorted.store(out, comment);
+	}
+  }
+
+  private static double millis(long[] sorted, double percentile) {
+	if (sorted.length == 0) {
+	  return 0;
+	}
+	int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+	return sorted[Math.max(index, 0)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  private static final class Action {
+	final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+	final AtomicInteger failures = new AtomicInteger();
+
+	long[] sorted() {
+	  long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+	  Arrays.sort(sorted);
+	  return sorted;
+	}
+  }
+}
@@ -0,0 +1,214 @@
+package com.full_webapp.vsapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/*
+ * Time from launching a JVM to the first served request (the login page answering 200), for the default
+ * configuration and the fast-start profile, with and without a class-data-sharing archive. Every run is a
+ * fresh process on the main classpath with a stub frontend bundle, and the medians are written to a
+ * properties file. Run with mvn -Pstartup verify -DskipTests -Dstartup.args="runs=5".
+ *
+ * The fast-start runs use an H2 file database whose schema a first run creates, as production would
+ * have its schema in place. The archive is dumped from the classes a fast-start run loaded; Java 8
+ * shares only JDK classes through it, later JDKs also the application jars.
+ */
+public class StartupBenchmark {
+  private static final long TIMEOUT_MILLIS = 180_000;
+  private static final long POLL_MILLIS = 20;
+
+  private final String classpath;
+  private final Path work;
+  private final String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+
+  StartupBenchmark(String classpath, Path work) {
+	this.classpath = classpath;
+	this.work = work;
+  }
+
+  public static void main(String[] args) throws Exception {
+	Map<String, String> options = new HashMap<>();
+	for (String arg : args) {
+	  String[] option = arg.split("=", 2);
+	  options.put(option[0], option.length > 1 ? option[1] : "true");
+	}
+	int runs = Integer.parseInt(options.getOrDefault("runs", "3"));
+	boolean cds = Boolean.parseBoolean(options.getOrDefault("cds", "true"));
+	Path work = Paths.get(options.getOrDefault("work", "target/startup"));
+	Path report = Paths.get(options.getOrDefault("report", "target/startup-report.properties"));
+	Path archive = work.resolve("vsapp.jsa");
+
+	StartupBenchmark benchmark = new StartupBenchmark(classpath(options.get("resources")), work);
+	Files.createDirectories(work);
+	benchmark.firstRequestMillis(Collections.emptyList(), benchmark.schemaProperties());
+	if (cds) {
+	  benchmark.dumpArchive(archive);
+	}
+
+	Map<String, List<String>> jvmOptions = new LinkedHashMap<>();
+	Map<String, List<String>> systemProperties = new LinkedHashMap<>();
+	jvmOptions.put("default", Collections.emptyList());
+	systemProperties.put("default", benchmark.defaultProperties());
+	jvmOptions.put("fast-start", Collections.emptyList());
+	systemProperties.put("fast-start", benchmark.fastStartProperties());
+	if (cds) {
+	  jvmOptions.put("fast-start+cds", Arrays.asList("-Xshare:auto", "-XX:+UnlockDiagnosticVMOptions", "-XX:SharedArchiveFile=" + archive));
+	  systemProperties.put("fast-start+cds", benchmark.fastStartProperties());
+	}
+
+	Map<String, List<Long>> results = new LinkedHashMap<>();
+	for (int run = 0; run < runs; run++) {
+	  // interleaved so that a noisy machine affects every mode alike
+	  for (String mode : jvmOptions.keySet()) {
+		results.computeIfAbsent(mode, m -> new ArrayList<>())
+			  .add(benchmark.firstRequestMillis(jvmOptions.get(mode), systemProperties.get(mode)));
+	  }
+	}
+
+	Properties summary = new Properties();
+	summary.setProperty("runs", String.valueOf(runs));
+	StringBuilder table = new StringBuilder(String.format("%-16s %10s %10s %10s%n", "mode", "min ms", "median ms", "max ms"));
+	results.forEach((mode, millis) -> {
+	  Collections.sort(millis);
+	  long median = millis.get(millis.size() / 2);
+	  summary.setProperty(mode + ".first-request.median", String.valueOf(median));
+	  summary.setProperty(mode + ".first-request.min", String.valueOf(millis.get(0)));
+	  summary.setProperty(mode + ".first-request.max", String.valueOf(millis.get(millis.size() - 1)));
+	  table.append(String.format(Locale.ROOT, "%-16s %10d %10d %10d%n", mode, millis.get(0), median, millis.get(millis.size() - 1)));
+	});
+	LoadReport.store(summary, report, "Startup benchmark, time to first served request");
+	System.out.printf("%nStartup, %d runs per mode%n%s", runs, table);
+  }
+
+  // the main classpath, without test classes and their application.properties, plus the stub bundle
+  private static String classpath(String resources) {
+	List<String> entries = Arrays.stream(System.getProperty("java.class.path").split(File.pathSeparator))
+		  .filter(entry -> !entry.endsWith("test-classes"))
+		  .collect(Collectors.toList());
+	if (resources != null) {
+	  entries.add(0, resources);
+	}
+	return String.join(File.pathSeparator, entries);
+  }
+
+  private List<String> commonProperties() {
+	return new ArrayList<>(Arrays.asList(
+		  "-Dmanagement.server.port=0",
+		  "-Dvaadin.productionMode=true",
+		  "-Dspring.datasource.username=sa",
+		  "-Dspring.datasource.password=",
+		  "-Dspring.main.banner-mode=off",
+		  "-Dlogging.level.root=warn"));
+  }
+
+  private List<String> defaultProperties() {
+	List<String> properties = commonProperties();
+	properties.add("-Dspring.datasource.url=jdbc:h2:mem:startup");
+	return properties;
+  }
+
+  private List<String> schemaProperties() {
+	List<String> properties = commonProperties();
+	properties.add("-Dspring.datasource.url=" + fileDatabase());
+	properties.add("-Dspring.jpa.hibernate.ddl-auto=create");
+	properties.add("-Dcustom.value.seed.on-startup=false");
+	return properties;
+  }
+
+  private List<String> fastStartProperties() {
+	List<String> properties = commonProperties();
+	properties.add("-Dspring.datasource.url=" + fileDatabase());
+	properties.add("-Dspring.profiles.active=fast-start");
+	return properties;
+  }
+
+  private String fileDatabase() {
+	return "jdbc:h2:file:" + work.toAbsolutePath().resolve("db");
+  }
+
+  private void dumpArchive(Path archive) throws IOException, InterruptedException {
+	Path classList = work.resolve("classes.lst");
+	firstRequestMillis(Collections.singletonList("-XX:DumpLoadedClassList=" + classList), fastStartProperties());
+	Files.deleteIfExists(archive);
+	Process dump = new ProcessBuilder(java, "-Xshare:dump", "-XX:SharedClassListFile=" + classList,
+		  "-XX:+UnlockDiagnosticVMOptions", "-XX:SharedArchiveFile=" + archive, "-cp", classpath)
+		  .redirectErrorStream(true)
+		  .redirectOutput(work.resolve("cds-dump.log").toFile())
+		  .start();
+	if (dump.waitFor() != 0) {
+	  throw new IllegalStateException("Dumping the archive failed, see " + work.resolve("cds-dump.log"));
+	}
+  }
+
+  long firstRequestMillis(List<String> jvmOptions, List<String> properties) throws IOException, InterruptedException {
+	int port = freePort();
+	List<String> command = new ArrayList<>();
+	command.add(java);
+	command.addAll(jvmOptions);
+	command.addAll(properties);
+	command.addAll(Arrays.asList("-Dserver.port=" + port, "-Dspring.devtools.restart.enabled=false",
+		  "-cp", classpath, VsappApplication.class.getName()));
+
+	long start = System.nanoTime();
+	Process process = new ProcessBuilder(command)
+		  .redirectErrorStream(true)
+		  .redirectOutput(ProcessBuilder.Redirect.appendTo(work.resolve("app.log").toFile()))
+		  .start();
+	try {
+	  URL login = new URL("http://localhost:" + port + "/login");
+	  while (!served(login)) {
+		if (!process.isAlive()) {
+		  throw new IllegalStateException("Application exited with " + process.exitValue() + ", see " + work.resolve("app.log"));
+		}
+		if (System.nanoTime() - start > TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS)) {
+		  throw new IllegalStateException("No response within " + TIMEOUT_MILLIS + " ms, see " + work.resolve("app.log"));
+		}
+		Thread.sleep(POLL_MILLIS);
+	  }
+	  return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	} finally {
+	  process.destroy();
+	  if (!process.waitFor(30, TimeUnit.SECONDS)) {
+		process.destroyForcibly().waitFor();
+	  }
+	}
+  }
+
+  private static boolean served(URL url) {
+	try {
+	  HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+	  connection.setConnectTimeout(1000);
+	  connection.setReadTimeout((int) TIMEOUT_MILLIS);
+	  try {
+		return connection.getResponseCode() == HttpURLConnection.HTTP_OK;
+	  } finally {
+		connection.disconnect();
+	  }
+	} catch (IOException e) {
+	  return false;
+	}
+  }
+
+  private static int freePort() throws IOException {
+	try (ServerSocket socket = new ServerSocket(0)) {
+	  return socket.getLocalPort();
+	}
+  }
+}
@@ -0,0 +1,346 @@
+package com.full_webapp.vsapp;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.vaadin.flow.internal.nodefeature.NodeFeatures;
+import com.vaadin.flow.shared.ApplicationConstants;
+import com.vaadin.flow.shared.JsonConstants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/*
+ * One browser tab speaking the Flow client protocol over plain HTTP: form login through Spring Security,
+ * the bootstrap page with its initial UIDL, then UIDL requests carrying property syncs, DOM events and
+ * published server calls. Keeps just enough of the state tree (tags, properties, children, text) to find
+ * components by label or caption, and the row keys each grid was sent. No push connection is opened, so
+ * changes made by background threads arrive with the next UIDL response; poll() asks for them.
+ */
+final class UidlClient {
+  private static final ObjectMapper JSON = new ObjectMapper();
+  private static final String UIDL_PREFIX = "for(;;);";
+  private static final String BOOTSTRAP_UIDL = "var uidl = ";
+  private static final String BOOTSTRAP_CONFIG = "var config = ";
+
+  private final String baseUrl;
+  private final Map<String, String> cookies = new HashMap<>();
+  private final Map<Integer, StateNode> nodes = new HashMap<>();
+  private final Map<Integer, List<String>> gridKeys = new HashMap<>();
+  private int uiId;
+  private String csrfToken;
+  private int syncId;
+  private int clientId;
+
+  UidlClient(String baseUrl) {
+	this.baseUrl = baseUrl;
+  }
+
+  // the login view, the form post it makes and the bootstrap of the view it redirects to
+  void login(String username, String password) throws IOException {
+	send("GET", "/login", null, null);
+	String form = "username=" + URLEncoder.encode(username, "UTF-8") + "&password=" + URLEncoder.encode(password, "UTF-8");
+	HttpURLConnection login = send("POST", "/login", "application/x-www-form-urlencoded", form);
+	String location = login.getHeaderField("Location");
+	if (login.getResponseCode() != HttpURLConnection.HTTP_MOVED_TEMP || location == null || location.contains("error")) {
+	  throw new LoadFailure("login rejected for " + username + ": " + login.getResponseCode() + " " + location);
+	}
+	bootstrap("/");
+  }
+
+  void bootstrap(String path) throws IOException {
+	String page = body(send("GET", path, null, null));
+	int uidlStart = page.indexOf(BOOTSTRAP_UIDL);
+	int configStart = page.indexOf(BOOTSTRAP_CONFIG, uidlStart);
+	if (uidlStart < 0 || configStart < 0) {
+	  throw new LoadFailure("no initial UIDL in bootstrap page of " + path);
+	}
+	String uidl = page.substring(uidlStart + BOOTSTRAP_UIDL.length(), configStart).trim();
+	String config = page.substring(configStart + BOOTSTRAP_CONFIG.length(), page.indexOf("};", configStart) + 1);
+	uiId = JSON.readTree(config).path(ApplicationConstants.UI_ID_PARAMETER).asInt();
+	nodes.clear();
+	gridKeys.clear();
+	clientId = 0;
+	// the page inlines the UIDL as a script literal, which escapes characters like < as \x3C
+	apply(JSON.readTree(uidl.substring(0, uidl.length() - 1).replaceAll("(?<!\\\\)\\\\x([0-9A-Fa-f]{2})", "\\\\u00$1")));
+  }
+
+  JsonNode sync(int node, String property, Object value, String event) throws IOException {
+	ObjectNode sync = rpc(JsonConstants.RPC_TYPE_MAP_SYNC, node);
+	sync.put(JsonConstants.RPC_FEATURE, NodeFeatures.ELEMENT_PROPERTIES);
+	sync.put(JsonConstants.RPC_PROPERTY, property);
+	sync.set(JsonConstants.RPC_PROPERTY_VALUE, JSON.valueToTree(value));
+	return uidl(sync, event(node, event, JSON.createObjectNode()));
+  }
+
+  JsonNode click(int node) throws IOException {
+	ObjectNode data = JSON.createObjectNode();
+	for (String coordinate : new String[]{"screenX", "screenY", "clientX", "clientY", "button"}) {
+	  data.put("event." + coordinate, 0);
+	}
+	for (String modifier : new String[]{"shiftKey", "ctrlKey", "altKey", "metaKey"}) {
+	  data.put("event." + modifier, false);
+	}
+	data.put("event.detail", 1);
+	return uidl(event(node, "click", data));
+  }
+
+  // a @ClientCallable on the component, the way a web component connector calls $server.method(args)
+  JsonNode call(int node, String method, Object... args) throws IOException {
+	ObjectNode call = rpc(JsonConstants.RPC_PUBLISHED_SERVER_EVENT_HANDLER, node);
+	call.put(JsonConstants.RPC_TEMPLATE_EVENT_METHOD_NAME, method);
+	call.set(JsonConstants.RPC_TEMPLATE_EVENT_ARGS, JSON.valueToTree(args));
+	return uidl(call);
+  }
+
+  JsonNode poll() throws IOException {
+	return uidl();
+  }
+
+  int find(String tag, Predicate<StateNode> matcher) {
+	return nodes.values().stream()
+		  .filter(node -> tag.equals(node.tag) && matcher.test(node))
+		  .mapToInt(node -> node.id)
+		  .min()
+		  .orElseThrow(() -> new LoadFailure("no <" + tag + "> matching in UI " + uiId));
+  }
+
+  int byLabel(String tag, String label) {
+	return find(tag, node -> label.equals(node.property("label")));
+  }
+
+  int byText(String tag, String text) {
+	return find(tag, node -> node.children.stream().map(nodes::get).anyMatch(child -> child != null && text.equals(child.text)));
+  }
+
+  Optional<String> property(int node, String property) {
+	return Optional.ofNullable(nodes.get(node)).map(found -> found.property(property));
+  }
+
+  List<String> gridKeys(int grid) {
+	List<String> keys = new ArrayList<>(gridKeys.getOrDefault(grid, Collections.emptyList()));
+	keys.removeIf(Objects::isNull);
+	return keys;
+  }
+
+  static boolean calls(JsonNode response, int node) {
+	for (JsonNode invocation : response.path(JsonConstants.UIDL_KEY_EXECUTE)) {
+	  JsonNode target = invocation.path(0);
+	  if (target.isArray() && target.path(1).asInt(-1) == node) {
+		return true;
+	  }
+	}
+	return false;
+  }
+
+  private ObjectNode rpc(String type, int node) {
+	ObjectNode rpc = JSON.createObjectNode();
+	rpc.put(JsonConstants.RPC_TYPE, type);
+	rpc.put(JsonConstants.RPC_NODE, node);
+	return rpc;
+  }
+
+  private ObjectNode event(int node, String event, ObjectNode data) {
+	ObjectNode rpc = rpc(JsonConstants.RPC_TYPE_EVENT, node);
+	rpc.put(JsonConstants.RPC_EVENT_TYPE, event);
+	rpc.set(JsonConstants.RPC_EVENT_DATA, data);
+	return rpc;
+  }
+
+  private JsonNode uidl(ObjectNode... invocations) throws IOException {
+	ObjectNode request = JSON.createObjectNode();
+	request.put(ApplicationConstants.CSRF_TOKEN, csrfToken);
+	ArrayNode rpc = request.putArray("rpc");
+	for (ObjectNode invocation : invocations) {
+	  rpc.add(invocation);
+	}
+	request.put(ApplicationConstants.SERVER_SYNC_ID, syncId);
+	request.put(ApplicationConstants.CLIENT_TO_SERVER_ID, clientId);
+	String path = "/?" + ApplicationConstants.REQUEST_TYPE_PARAMETER + "=" + ApplicationConstants.REQUEST_TYPE_UIDL
+		  + "&" + ApplicationConstants.UI_ID_PARAMETER + "=" + uiId;
+	HttpURLConnection connection = send("POST", path, JsonConstants.JSON_CONTENT_TYPE, JSON.writeValueAsString(request));
+	String body = body(connection);
+	if (!body.startsWith(UIDL_PREFIX)) {
+	  throw new LoadFailure("not a UIDL response: " + abbreviate(body));
+	}
+	JsonNode response = JSON.readTree(body.substring(UIDL_PREFIX.length())).path(0);
+	// the server has consumed the message even when handling it failed
+	clientId++;
+	JsonNode meta = response.path("meta");
+	if (meta.has("appError") || meta.has("sessionExpired") || response.has(ApplicationConstants.RESYNCHRONIZE_ID)) {
+	  throw new LoadFailure("UI " + uiId + " failed: " + abbreviate(response.toString()));
+	}
+	apply(response);
+	return response;
+  }
+
+  private void apply(JsonNode uidl) {
+	if (uidl.has(ApplicationConstants.UIDL_SECURITY_TOKEN_ID)) {
+	  csrfToken = uidl.get(ApplicationConstants.UIDL_SECURITY_TOKEN_ID).asText();
+	}
+	if (uidl.has(ApplicationConstants.SERVER_SYNC_ID)) {
+	  syncId = uidl.get(ApplicationConstants.SERVER_SYNC_ID).asInt();
+	}
+	for (JsonNode change : uidl.path("changes")) {
+	  applyChange(change);
+	}
+	for (JsonNode invocation : uidl.path(JsonConstants.UIDL_KEY_EXECUTE)) {
+	  String expression = invocation.path(invocation.size() - 1).asText();
+	  int target = invocation.path(0).path(1).asInt();
+	  if (expression.contains("$connector.set(") && invocation.size() == 4) {
+		List<String> keys = gridKeys.computeIfAbsent(target, grid -> new ArrayList<>());
+		int index = invocation.path(1).asInt();
+		for (JsonNode item : decoded(invocation.path(2))) {
+		  while (keys.size() <= index) {
+			keys.add(null);
+		  }
+		  keys.set(index++, item.path("key").asText());
+		}
+	  } else if (expression.contains("$connector.updateSize(")) {
+		List<String> keys = gridKeys.computeIfAbsent(target, grid -> new ArrayList<>());
+		int size = invocation.path(1).asInt();
+		while (keys.size() > size) {
+		  keys.remove(keys.size() - 1);
+		}
+	  }
+	}
+  }
+
+  // JsonCodec sends arrays as [1, [...]] so they are not mistaken for node references
+  private static JsonNode decoded(JsonNode value) {
+	return value.isArray() && value.path(0).asInt(-1) == 1 && value.path(1).isArray() ? value.path(1) : value;
+  }
+
+  private void applyChange(JsonNode change) {
+	int id = change.path(JsonConstants.CHANGE_NODE).asInt();
+	String type = change.path(JsonConstants.CHANGE_TYPE).asText();
+	if (JsonConstants.CHANGE_TYPE_DETACH.equals(type)) {
+	  nodes.remove(id);
+	  gridKeys.remove(id);
+	  return;
+	}
+	StateNode node = nodes.computeIfAbsent(id, StateNode::new);
+	int feature = change.path(JsonConstants.CHANGE_FEATURE).asInt(-1);
+	String key = change.path(JsonConstants.CHANGE_MAP_KEY).asText(null);
+	switch (type) {
+	  case JsonConstants.CHANGE_TYPE_PUT:
+		JsonNode value = change.get(JsonConstants.CHANGE_PUT_VALUE);
+		if (feature == NodeFeatures.ELEMENT_DATA && "tag".equals(key)) {
+		  node.tag = value.asText();
+		} else if (feature == NodeFeatures.ELEMENT_PROPERTIES && value != null) {
+		  node.properties.put(key, value);
+		} else if (feature == NodeFeatures.TEXT_NODE && value != null) {
+		  node.text = value.asText();
+		}
+		break;
+	  case JsonConstants.CHANGE_TYPE_REMOVE:
+		if (feature == NodeFeatures.ELEMENT_PROPERTIES) {
+		  node.properties.remove(key);
+		}
+		break;
+	  case JsonConstants.CHANGE_TYPE_SPLICE:
+		if (feature == NodeFeatures.ELEMENT_CHILDREN) {
+		  int index = change.path(JsonConstants.CHANGE_SPLICE_INDEX).asInt();
+		  int remove = Math.min(change.path(JsonConstants.CHANGE_SPLICE_REMOVE).asInt(), node.children.size() - index);
+		  node.children.subList(index, index + Math.max(remove, 0)).clear();
+		  List<Integer> added = new ArrayList<>();
+		  change.path(JsonConstants.CHANGE_SPLICE_ADD_NODES).forEach(child -> added.add(child.asInt()));
+		  node.children.addAll(index, added);
+		}
+		break;
+	  case JsonConstants.CHANGE_TYPE_CLEAR:
+		if (feature == NodeFeatures.ELEMENT_CHILDREN) {
+		  node.children.clear();
+		}
+		break;
+	  default:
+		break;
+	}
+  }
+
+  private HttpURLConnection send(String method, String path, String contentType, String body) throws IOException {
+	HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+	connection.setRequestMethod(method);
+	connection.setInstanceFollowRedirects(false);
+	if (!cookies.isEmpty()) {
+	  StringBuilder header = new StringBuilder();
+	  cookies.forEach((name, value) -> header.append(header.length() == 0 ? "" : "; ").append(name).append('=').append(value));
+	  connection.setRequestProperty("Cookie", header.toString());
+	}
+	if (body != null) {
+	  connection.setDoOutput(true);
+	  connection.setRequestProperty("Content-Type", contentType);
+	  try (OutputStream out = connection.getOutputStream()) {
+		out.write(body.getBytes(StandardCharsets.UTF_8));
+	  }
+	}
+	int status = connection.getResponseCode();
+	List<String> setCookies = connection.getHeaderFields().getOrDefault("Set-Cookie", Collections.emptyList());
+	for (String setCookie : setCookies) {
+	  String pair = setCookie.split(";", 2)[0];
+	  int equals = pair.indexOf('=');
+	  cookies.put(pair.substring(0, equals).trim(), pair.substring(equals + 1).trim());
+	}
+	if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
+	  throw new LoadFailure(method + " " + path + " returned " + status + ": " + abbreviate(body(connection)));
+	}
+	return connection;
+  }
+
+  private static String body(HttpURLConnection connection) throws IOException {
+	try (InputStream in = connection.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST
+		  ? connection.getErrorStream() : connection.getInputStream()) {
+	  if (in == null) {
+		return "";
+	  }
+	  ByteArrayOutputStream out = new ByteArrayOutputStream();
+	  byte[] buffer = new byte[8192];
+	  for (int read; (read = in.read(buffer)) > 0; ) {
+		out.write(buffer, 0, read);
+	  }
+	  return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+  }
+
+  private static String abbreviate(String text) {
+	return text.length() > 300 ? text.substring(0, 300) + "..." : text;
+  }
+
+  static final class StateNode {
+	final int id;
+	final Map<String, JsonNode> properties = new HashMap<>();
+	final List<Integer> children = new ArrayList<>();
+	String tag;
+	String text;
+
+	StateNode(int id) {
+	  this.id = id;
+	}
+
+	String property(String name) {
+	  JsonNode value = properties.get(name);
+	  return value == null || value.isNull() ? null : value.asText();
+	}
+  }
+
+  static final class LoadFailure extends RuntimeException {
+	LoadFailure(String message) {
+	  super(message);
+	}
+  }
+}
@@ -1,9 +1,23 @@
 package com.full_webapp.vsapp;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import com.vaadin.flow.component.AttachEvent;
 import com.vaadin.flow.component.Component;
 import com.vaadin.flow.component.ComponentEvent;
 import com.vaadin.flow.component.ComponentEventListener;
+import com.vaadin.flow.component.ComponentUtil;
+import com.vaadin.flow.component.DetachEvent;
 import com.vaadin.flow.component.Key;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
 import com.vaadin.flow.component.applayout.AppLayout;
 import com.vaadin.flow.component.applayout.DrawerToggle;
 import com.vaadin.flow.component.button.Button;
@@ -15,56 +29,206 @@ import com.vaadin.flow.component.grid.Grid;
 import com.vaadin.flow.component.html.Anchor;
 import com.vaadin.flow.component.html.Div;
 import com.vaadin.flow.component.html.H1;
+import com.vaadin.flow.component.html.Span;
 import com.vaadin.flow.component.login.LoginForm;
+import com.vaadin.flow.component.notification.Notification;
 import com.vaadin.flow.component.orderedlayout.FlexComponent;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import com.vaadin.flow.component.page.Push;
+import com.vaadin.flow.component.progressbar.ProgressBar;
 import com.vaadin.flow.component.textfield.EmailField;
 import com.vaadin.flow.component.textfield.TextField;
 import com.vaadin.flow.data.binder.BeanValidationBinder;
 import com.vaadin.flow.data.binder.Binder;
 import com.vaadin.flow.data.binder.ValidationException;
+import com.vaadin.flow.data.provider.ConfigurableFilterDataProvider;
+import com.vaadin.flow.data.provider.DataProvider;
+import com.vaadin.flow.data.provider.QuerySortOrder;
+import com.vaadin.flow.data.provider.SortDirection;
 import com.vaadin.flow.data.value.ValueChangeMode;
 import com.vaadin.flow.router.*;
 import com.vaadin.flow.server.PWA;
 import com.vaadin.flow.server.ServiceInitEvent;
 import com.vaadin.flow.server.ServletHelper;
+import com.vaadin.flow.server.StreamResource;
 import com.vaadin.flow.server.VaadinServiceInitListener;
+import com.vaadin.flow.server.VaadinSession;
+import com.vaadin.flow.server.WrappedSession;
 import com.vaadin.flow.shared.ApplicationConstants;
 import com.vaadin.flow.shared.Registration;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
 import lombok.extern.java.Log;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.hibernate.StatelessSession;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.jcache.MissingCacheStrategy;
+import org.hibernate.cache.jcache.internal.JCacheRegionFactory;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.actuate.metrics.export.prometheus.PrometheusScrapeEndpoint;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.JpaSort;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.lang.Nullable;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
 import org.springframework.security.web.savedrequest.HttpSessionRequestCache;
 import org.springframework.stereotype.Repository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.filter.OncePerRequestFilter;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.cache.CacheManager;
+import javax.cache.spi.CachingProvider;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import javax.persistence.*;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_REGION;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
 /*
  * 	Main
  */
@@ -85,6 +249,7 @@ public class VsappApplication {
 	  offlineResources = {
 			"static/offline-styles.css",
 			"./images/offline.png"})
+@Push
 class MainLayout extends AppLayout {
   public MainLayout() {
 	createHeader();
@@ -111,7 +276,142 @@ class MainLayout extends AppLayout {
 	RouterLink listLink = new RouterLink("data-list", ListView.class);
 	listLink.setHighlightCondition(HighlightConditions.sameLocation());
 
-	addToDrawer(new VerticalLayout(listLink));
+	VerticalLayout links = new VerticalLayout(listLink, new RouterLink("dashboard", DashboardView.class));
+	if (SecurityUtils.hasRole(MemoryView.ROLE)) {
+	  links.add(new RouterLink("memory", MemoryView.class));
+	}
+	addToDrawer(links);
+  }
+}
+
+/*
+ * Admin page with heap use against the budget and the sampled footprint of every session on this node.
+ */
+@Route(value = "admin/memory", layout = MainLayout.class)
+@PageTitle("memory-page")
+class MemoryView extends VerticalLayout implements BeforeEnterObserver {
+  static final String ROLE = "ADMIN";
+
+  private final SessionMemoryMonitor monitor;
+  private final Span heap = new Span();
+  private final Grid<SessionFootprint> grid = new Grid<>();
+
+  public MemoryView(SessionMemoryMonitor monitor) {
+	this.monitor = monitor;
+	setSizeFull();
+
+	grid.addColumn(SessionFootprint::getUser).setHeader("User");
+	grid.addColumn(footprint -> footprint.getUis().size()).setHeader("UIs");
+	grid.addColumn(SessionFootprint::getStateNodes).setHeader("State nodes");
+	grid.addColumn(SessionFootprint::getGridItems).setHeader("Grid items");
+	grid.addColumn(SessionFootprint::getBoundFields).setHeader("Bound fields");
+	grid.addColumn(footprint -> footprint.getEstimatedBytes() / 1024).setHeader("Estimated KB")
+		  .setComparator(SessionFootprint::getEstimatedBytes);
+	grid.addColumn(SessionFootprint::getSampledAt).setHeader("Sampled");
+	grid.getColumns().forEach(column -> column.setAutoWidth(true));
+	grid.setSizeFull();
+
+	Button refresh = new Button("Refresh", click -> refresh());
+	add(new HorizontalLayout(heap, refresh), grid);
+	refresh();
+  }
+
+  @Override
+  public void beforeEnter(BeforeEnterEvent event) {
+	if (!SecurityUtils.hasRole(ROLE)) {
+	  event.rerouteTo(ListView.class);
+	}
+  }
+
+  private void refresh() {
+	MemoryUsage usage = monitor.heapUsage();
+	heap.setText(String.format("Heap %d MB used of %d MB, budget %d%%, sessions ~%d KB",
+		  usage.getUsed() >> 20, usage.getMax() >> 20, monitor.getHeapBudgetPercent(), monitor.totalEstimatedBytes() / 1024));
+	grid.setItems(monitor.footprints());
+  }
+}
+
+/*
+ * Contacts per status and per company, read from ContactAggregates and refreshed by pushed contact
+ * changes. Rendering costs the same for ten contacts as for ten million.
+ */
+@Route(value = "dashboard", layout = MainLayout.class)
+@PageTitle("dashboard-page")
+class DashboardView extends VerticalLayout {
+  private final ContactAggregates aggregates;
+  private final CompanyService companyService;
+  private final ContactBroadcaster broadcaster;
+  private final Span total = new Span();
+  private final Grid<Count> statuses = new Grid<>();
+  private final Grid<Count> companies = new Grid<>();
+  private Registration broadcasterRegistration;
+
+  public DashboardView(ContactAggregates aggregates, CompanyService companyService, ContactBroadcaster broadcaster) {
+	this.aggregates = aggregates;
+	this.companyService = companyService;
+	this.broadcaster = broadcaster;
+	addClassName("dashboard-view");
+	setSizeFull();
+
+	configure(statuses, "Status");
+	configure(companies, "Company");
+	HorizontalLayout content = new HorizontalLayout(statuses, companies);
+	content.setSizeFull();
+	add(total, content);
+	refresh();
+  }
+
+  @Override
+  protected void onAttach(AttachEvent attachEvent) {
+	broadcasterRegistration = broadcaster.register(attachEvent.getUI(), batch -> refresh());
+  }
+
+  @Override
+  protected void onDetach(DetachEvent detachEvent) {
+	broadcasterRegistration.remove();
+	broadcasterRegistration = null;
+  }
+
+  private static void configure(Grid<Count> grid, String header) {
+	grid.addColumn(Count::getLabel).setHeader(header).setAutoWidth(true);
+	grid.addColumn(Count::getContacts).setHeader("Contacts").setAutoWidth(true);
+	grid.setSizeFull();
+  }
+
+  private void refresh() {
+	total.setText(aggregates.total() + " contacts");
+	List<Count> byStatus = new ArrayList<>();
+	for (Contact.Status status : Contact.Status.values()) {
+	  byStatus.add(new Count(status.name(), aggregates.count(status)));
+	}
+	byStatus.add(new Count("No status", aggregates.count(null)));
+	statuses.setItems(byStatus);
+
+	List<Count> byCompany = new ArrayList<>();
+	for (Company company : companyService.findAll()) {
+	  byCompany.add(new Count(company.getName(), aggregates.countForCompany(company.getId())));
+	}
+	byCompany.sort(Comparator.comparingLong(Count::getContacts).reversed());
+	byCompany.add(new Count("No company", aggregates.countForCompany(null)));
+	companies.setItems(byCompany);
+  }
+
+  private static final class Count {
+	private final String label;
+	private final long contacts;
+
+	Count(String label, long contacts) {
+	  this.label = label;
+	  this.contacts = contacts;
+	}
+
+	String getLabel() {
+	  return label;
+	}
+
+	long getContacts() {
+	  return contacts;
+	}
   }
 }
 
@@ -145,16 +445,37 @@ class LoginView extends VerticalLayout implements BeforeEnterObserver {
 @Log
 @Route(value = "", layout = MainLayout.class)
 @PageTitle("contacts-page")
-class ListView extends VerticalLayout {
+class ListView extends VerticalLayout implements FootprintReporter {
 
   ContactForm form;
-  Grid<Contact> grid = new Grid<>();
+  Grid<ContactRow> grid = new Grid<>();
   TextField filterText = new TextField();
+  ProgressBar loadingIndicator = new ProgressBar();
+  Future<?> pendingLoad;
 
   private final ContactService contactService;
+  private final CompanyService companyService;
+  private final ConfigurableFilterDataProvider<ContactRow, Void, String> dataProvider;
+  private final ContactBroadcaster broadcaster;
+  private final ContactQueryExecutor queryExecutor;
+  private final ContactWriteBehind writeBehind;
+  private final VaadinMetrics vaadinMetrics;
+  private Registration broadcasterRegistration;
+  // grid shows nothing until the first background load lands, later loads keep the old rows meanwhile
+  private boolean loading = true;
+  private FilterLoad prefetched;
+  private final KeysetScroll scroll = new KeysetScroll();
 
-  public ListView(ContactService contactService, CompanyService companyService) {
+  public ListView(ContactService contactService, CompanyService companyService,
+				  ContactBroadcaster broadcaster, ContactQueryExecutor queryExecutor, ContactWriteBehind writeBehind,
+				  VaadinMetrics vaadinMetrics) {
 	this.contactService = contactService;
+	this.companyService = companyService;
+	this.broadcaster = broadcaster;
+	this.queryExecutor = queryExecutor;
+	this.writeBehind = writeBehind;
+	this.vaadinMetrics = vaadinMetrics;
+	this.dataProvider = createDataProvider();
 	addClassName("list-view");
 	setSizeFull();
 	configureGrid();
@@ -173,16 +494,94 @@ class ListView extends VerticalLayout {
 	closeEditor();
   }
 
+  @Override
+  protected void onAttach(AttachEvent attachEvent) {
+	broadcasterRegistration = broadcaster.register(attachEvent.getUI(), this::applyChanges);
+  }
+
+  @Override
+  protected void onDetach(DetachEvent detachEvent) {
+	broadcasterRegistration.remove();
+	broadcasterRegistration = null;
+  }
+
+  // Changes made in other sessions, runs inside UI.access
+  private void applyChanges(ContactBroadcaster.Batch batch) {
+	if (batch.isStructural()) {
+	  refreshAll();
+	} else {
+	  batch.getChanges().forEach(change -> dataProvider.refreshItem(change.getRow()));
+	}
+  }
+
+  // Lazy provider only re-reads count and the visible window, removed rows shift the offsets after them
   private void deleteContact(ContactForm.DeleteEvent evt) {
 	contactService.delete(evt.getContact());
-	updateList();
+	if (evt.getContact().isPersisted()) {
+	  refreshAll();
+	}
 	closeEditor();
   }
 
+  /*
+   * Edits resend just the changed row, rows keep their position until the next filter or sort.
+   * A save that fails right away leaves the editor open. With write-behind the editor closes right away,
+   * the grid is updated once the save is acknowledged and a failed save reopens the editor.
+   */
   private void saveContact(ContactForm.SaveEvent evt) {
-	contactService.save(evt.getContact());
-	updateList();
+	Contact contact = evt.getContact();
+	boolean created = !contact.isPersisted();
+	CompletableFuture<Contact> ack;
+	try {
+	  ack = writeBehind.submit(contact);
+	} catch (RejectedExecutionException e) {
+	  Notification.show("Too many saves pending, please try again");
+	  return;
+	}
+	if (ack.isDone()) {
+	  Throwable failure = failure(ack);
+	  if (failure == null) {
+		closeEditor();
+	  }
+	  applySave(contact, created, failure == null ? ack.join() : null, failure);
+	  return;
+	}
 	closeEditor();
+	UI ui = UI.getCurrent();
+	ack.whenComplete((saved, failure) -> {
+	  try {
+		ui.access(() -> {
+		  applySave(contact, created, saved, failure);
+		  if (failure == null) {
+			Notification.show(saved + " saved");
+		  } else if (!form.isVisible()) {
+			openEditor(contact);
+		  }
+		});
+	  } catch (UIDetachedException e) {
+		// view is gone, nothing to update
+	  }
+	});
+  }
+
+  private void applySave(Contact contact, boolean created, Contact saved, Throwable failure) {
+	if (failure != null) {
+	  log.log(Level.WARNING, "Saving " + contact + " failed", failure);
+	  Notification.show("Saving " + contact + " failed");
+	} else if (created) {
+	  refreshAll();
+	} else {
+	  dataProvider.refreshItem(ContactRow.of(saved));
+	}
+  }
+
+  private static Throwable failure(CompletableFuture<?> ack) {
+	try {
+	  ack.join();
+	  return null;
+	} catch (CompletionException e) {
+	  return e.getCause();
+	}
   }
 
   private HorizontalLayout getToolBar() {
@@ -193,14 +592,40 @@ class ListView extends VerticalLayout {
 
 	Button addContactButton = new Button("Add contact", click -> addContact());
 
-	HorizontalLayout toolbar = new HorizontalLayout(filterText, addContactButton);
+	loadingIndicator.setIndeterminate(true);
+	loadingIndicator.setWidth("8em");
+	loadingIndicator.setVisible(false);
+
+	HorizontalLayout toolbar = new HorizontalLayout(filterText, addContactButton,
+		  createExportLink(ExportFormat.CSV), createExportLink(ExportFormat.JSON), loadingIndicator);
+	toolbar.setDefaultVerticalComponentAlignment(Alignment.CENTER);
 	toolbar.addClassName("toolbar");
 	return toolbar;
   }
 
+  /*
+   * Export is streamed straight into the response outside of the session lock, only the filter is read under it.
+   */
+  private Anchor createExportLink(ExportFormat format) {
+	StreamResource resource = new StreamResource("contacts." + format.getExtension(), (out, session) -> {
+	  String filter;
+	  session.lock();
+	  try {
+		filter = filterText.getValue();
+	  } finally {
+		session.unlock();
+	  }
+	  contactService.export(filter, format, out);
+	});
+	resource.setContentType(format.getContentType());
+	Anchor link = new Anchor(resource, "Export " + format);
+	link.getElement().setAttribute("download", true);
+	return link;
+  }
+
   private void addContact() {
 	grid.asSingleSelect().clear();
-	editContact(new Contact());
+	openEditor(new Contact());
   }
 
   private void configureGrid() {
@@ -211,44 +636,183 @@ class ListView extends VerticalLayout {
 //	grid.setItems(Arrays.asList(contactRepository.getOne(1L), contactRepository.getOne(2L))); // <--- Error: No Session
 //	grid.setColumns("firstName", "lastName", "email", "status"); // <--- Error: IllegalStateException ... cannot access with mod. 'public'
 
-	grid.addColumn(Contact::getFirstName).setHeader("First Name").setSortable(true);
-	grid.addColumn(Contact::getLastName).setHeader("Last Name").setSortable(true);
-	grid.addColumn(Contact::getEmail).setHeader("Email").setSortable(true);
-	grid.addColumn(Contact::getStatus).setHeader("Status").setSortable(true);
+	grid.addColumn(ContactRow::getFirstName).setHeader("First Name").setSortProperty("firstName");
+	grid.addColumn(ContactRow::getLastName).setHeader("Last Name").setSortProperty("lastName");
+	grid.addColumn(ContactRow::getEmail).setHeader("Email").setSortProperty("email");
+	grid.addColumn(ContactRow::getStatus).setHeader("Status").setSortProperty("status");
 
 //	grid.removeColumnByKey("company");
-	grid.addColumn(contact -> {
-	  Company company = contact.getCompany();
-	  return company == null ? "-" : company.getName();
-	}).setHeader("Company");
+	grid.addColumn(row -> row.getCompanyName() == null ? "-" : row.getCompanyName()).setHeader("Company");
 
 	grid.getColumns().forEach(contactColumn -> contactColumn.setAutoWidth(true));
 
+	grid.setDataProvider(dataProvider);
 	grid.asSingleSelect().addValueChangeListener(evt -> editContact(evt.getValue()));
   }
 
-  private void editContact(Contact contact) {
-	if (contact == null) {
+  // the grid holds rows only, the entity is loaded when its editor opens
+  private void editContact(ContactRow row) {
+	if (row == null) {
 	  closeEditor();
+	  return;
+	}
+	Optional<Contact> contact = writeBehind.pending(row.getId());
+	if (!contact.isPresent()) {
+	  contact = contactService.findById(row.getId());
+	}
+	if (contact.isPresent()) {
+	  openEditor(contact.get());
 	} else {
-	  form.setContact(contact);
-	  form.setVisible(true);
-	  addClassName("editing");
+	  Notification.show(row + " was deleted");
+	  refreshAll();
 	}
   }
 
+  private void openEditor(Contact contact) {
+	form.setContact(contact);
+	form.setVisible(true);
+	addClassName("editing");
+  }
+
   private void closeEditor() {
 //	form.setContact(null);
 	form.setVisible(false);
 	removeClassName("editing");
   }
 
+  /*
+   * Count and first page for a new filter run on the query executor, off the request thread.
+   * A newer filter cancels the load in flight; only the latest one is applied, inside UI.access.
+   */
   private void updateList() {
-	grid.setItems(contactService.findAll(filterText.getValue()));
+	if (pendingLoad != null) {
+	  pendingLoad.cancel(true);
+	}
+	String filter = filterText.getValue();
+	Sort sort = toSort(grid.getDataCommunicator().getBackEndSorting());
+	int limit = grid.getPageSize() * 2;
+	try {
+	  pendingLoad = queryExecutor.load(UI.getCurrent(),
+			() -> new FilterLoad(filter, sort,
+				  contactService.count(filter),
+				  KeysetCursor.supports(sort)
+						? contactService.seek(filter, KeysetCursor.first(sort), limit).getContent()
+						: contactService.fetch(filter, 0, limit, sort)),
+			this::applyLoad,
+			this::failLoad);
+	  loadingIndicator.setVisible(true);
+	} catch (RejectedExecutionException e) {
+	  Notification.show("Too many searches running, please try again");
+	}
+  }
+
+  private void applyLoad(Future<?> load, FilterLoad result) {
+	if (load != pendingLoad) {
+	  return;
+	}
+	pendingLoad = null;
+	loading = false;
+	loadingIndicator.setVisible(false);
+	prefetched = result;
+	dataProvider.setFilter(result.filter);
+  }
+
+  private void failLoad(Future<?> load, Exception e) {
+	if (load != pendingLoad) {
+	  return;
+	}
+	pendingLoad = null;
+	// the grid queries on its own again rather than staying empty
+	loading = false;
+	loadingIndicator.setVisible(false);
+	log.log(Level.WARNING, "Loading contacts failed", e);
+	Notification.show("Loading contacts failed");
+  }
+
+  @Override
+  public void reportFootprint(UiFootprint footprint) {
+	FilterLoad load = prefetched;
+	footprint.addGridItems(scroll.size() + (load == null ? 0 : load.firstPage.size()));
+  }
+
+  private void refreshAll() {
+	prefetched = null;
+	scroll.reset();
+	dataProvider.refreshAll();
+  }
+
+  /*
+   * Grid asks only for the visible window, filter and sort orders are pushed down to the database.
+   * The window right after a background load is served from its prefetched result.
+   */
+  private ConfigurableFilterDataProvider<ContactRow, Void, String> createDataProvider() {
+	DataProvider<ContactRow, String> provider = DataProvider.fromFilteringCallbacks(
+		  query -> {
+			List<ContactRow> items = fetch(query.getFilter().orElse(""), query.getOffset(), query.getLimit(),
+				  toSort(query.getSortOrders()));
+			vaadinMetrics.recordContactGridItems(items.size());
+			return items.stream();
+		  },
+		  query -> count(query.getFilter().orElse("")));
+	return provider.withConfigurableFilter();
+  }
+
+  private List<ContactRow> fetch(String filter, int offset, int limit, Sort sort) {
+	if (loading) {
+	  return Collections.emptyList();
+	}
+	FilterLoad load = prefetched;
+	prefetched = null;
+	if (load != null && load.covers(filter, sort, offset, limit)) {
+	  List<ContactRow> rows = load.firstPage.subList(0, Math.min(limit, load.firstPage.size()));
+	  scroll.remember(filter, sort, 0, rows);
+	  return rows;
+	}
+	return scroll.fetch(contactService, filter, offset, limit, sort);
+  }
+
+  private int count(String filter) {
+	if (loading) {
+	  return 0;
+	}
+	FilterLoad load = prefetched;
+	if (load != null && load.filter.equals(filter)) {
+	  return load.count;
+	}
+	return contactService.count(filter);
+  }
+
+  private static Sort toSort(List<QuerySortOrder> sortOrders) {
+	return Sort.by(sortOrders.stream()
+		  .map(order -> order.getDirection() == SortDirection.DESCENDING
+				? Sort.Order.desc(order.getSorted()).nullsFirst()
+				: Sort.Order.asc(order.getSorted()).nullsLast())
+		  .collect(Collectors.toList()));
+  }
+
+  private static final class FilterLoad {
+	private final String filter;
+	private final Sort sort;
+	private final int count;
+	private final List<ContactRow> firstPage;
+
+	FilterLoad(String filter, Sort sort, int count, List<ContactRow> firstPage) {
+	  this.filter = filter;
+	  this.sort = sort;
+	  this.count = count;
+	  this.firstPage = firstPage;
+	}
+
+	boolean covers(String filter, Sort sort, int offset, int limit) {
+	  return offset == 0
+			&& this.filter.equals(filter)
+			&& this.sort.equals(sort)
+			&& (limit <= firstPage.size() || firstPage.size() == count);
+	}
   }
 }
 
-class ContactForm extends FormLayout {
+class ContactForm extends FormLayout implements FootprintReporter {
 
   TextField firstName = new TextField("First name");
   TextField lastName = new TextField("Last name");
@@ -271,12 +835,7 @@ class ContactForm extends FormLayout {
 	company.setItems(companies);
 	company.setItemLabelGenerator(Company::getName);
 
-	add(firstName, lastName, email, status, company, createButtonsLayout());
-  }
-
-  public void setContact(Contact contact) {
-	this.contact = contact;
-
+	// bound once, rebinding per contact kept adding bindings to the binder for the life of the session
 	binder
 		  .forField(firstName)
 		  .bind(Contact::getFirstName, Contact::setFirstName);
@@ -293,9 +852,19 @@ class ContactForm extends FormLayout {
 		  .forField(company)
 		  .bind(Contact::getCompany, Contact::setCompany);
 
+	add(firstName, lastName, email, status, company, createButtonsLayout());
+  }
+
+  public void setContact(Contact contact) {
+	this.contact = contact;
 	binder.readBean(contact);
   }
 
+  @Override
+  public void reportFootprint(UiFootprint footprint) {
+	footprint.addBinder((int) binder.getFields().count(), contact != null);
+  }
+
   private Component createButtonsLayout() {
 	save.addThemeVariants(ButtonVariant.LUMO_PRIMARY);
 	delete.addThemeVariants(ButtonVariant.LUMO_ERROR);
@@ -362,367 +931,3879 @@ class ContactForm extends FormLayout {
 /*
  * 	Repository
  */
+/*
+ * Contact list reads fetch the company in the same select, the grid shows it on every row.
+ */
 @Repository
-interface ContactRepository extends JpaRepository<Contact, Long> {
+interface ContactRepository extends JpaRepository<Contact, Long>, ContactKeysetRepository {
+  String ROW_SELECT = "select new com.full_webapp.vsapp.ContactRow(c.id, c.firstName, c.lastName, c.email, c.status, co.name) " +
+	  "from Contact c left join c.company co";
+
+  @Override
+  @EntityGraph(attributePaths = "company")
+  List<Contact> findAll();
+
+  @Override
+  @EntityGraph(attributePaths = "company")
+  List<Contact> findAllById(Iterable<Long> ids);
+
+  // row windows are lists, so there is no count query as with findAll(Pageable)
+  // windows and counts are cached per offset and limit, any contact or company write invalidates them
+  @QueryHints({@QueryHint(name = HINT_CACHEABLE, value = "true"),
+	  @QueryHint(name = HINT_CACHE_REGION, value = SecondLevelCacheConfiguration.CONTACT_ROWS_REGION)})
+  @Query(ROW_SELECT)
+  List<ContactRow> findRows(Pageable pageable);
+
+  // cached ids per term, the contacts themselves then come from the contact region
+  @QueryHints({@QueryHint(name = HINT_CACHEABLE, value = "true"),
+	  @QueryHint(name = HINT_CACHE_REGION, value = SecondLevelCacheConfiguration.CONTACT_SEARCH_REGION)})
+  @EntityGraph(attributePaths = "company")
   @Query("select c from Contact c " +
 		"where lower(c.firstName) like lower(concat('%', :searchTerm, '%')) " +
-		"or lower(c.lastName) like lower(concat('%', :searchTerm, '%'))")
+		"or lower(c.lastName) like lower(concat('%', :searchTerm, '%')) " +
+		"or lower(c.email) like lower(concat('%', :searchTerm, '%'))")
   List<Contact> search(@Param("searchTerm") String searchTerm);
-}
 
-@Repository
-interface CompanyRepository extends JpaRepository<Company, Long> {
+  @QueryHints({@QueryHint(name = HINT_CACHEABLE, value = "true"),
+	  @QueryHint(name = HINT_CACHE_REGION, value = SecondLevelCacheConfiguration.CONTACT_ROWS_REGION)})
+  @Query(ROW_SELECT + " " +
+		"where lower(c.firstName) like lower(concat('%', :searchTerm, '%')) " +
+		"or lower(c.lastName) like lower(concat('%', :searchTerm, '%')) " +
+		"or lower(c.email) like lower(concat('%', :searchTerm, '%'))")
+  List<ContactRow> searchRows(@Param("searchTerm") String searchTerm, Pageable pageable);
+
+  @QueryHints({@QueryHint(name = HINT_CACHEABLE, value = "true"),
+	  @QueryHint(name = HINT_CACHE_REGION, value = SecondLevelCacheConfiguration.CONTACT_ROWS_REGION)})
+  @Query("select count(c) from Contact c " +
+		"where lower(c.firstName) like lower(concat('%', :searchTerm, '%')) " +
+		"or lower(c.lastName) like lower(concat('%', :searchTerm, '%')) " +
+		"or lower(c.email) like lower(concat('%', :searchTerm, '%'))")
+  long countSearch(@Param("searchTerm") String searchTerm);
+
+  @QueryHints({@QueryHint(name = HINT_CACHEABLE, value = "true"),
+	  @QueryHint(name = HINT_CACHE_REGION, value = SecondLevelCacheConfiguration.CONTACT_ROWS_REGION)})
+  @Query(ROW_SELECT + " where c.id in :ids")
+  List<ContactRow> findRowsByIdIn(@Param("ids") Collection<Long> ids, Pageable pageable);
+
+  @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+  @Query(ROW_SELECT)
+  Stream<ContactRow> streamRows();
+
+  @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+  @Query(ROW_SELECT + " " +
+		"where lower(c.firstName) like lower(concat('%', :searchTerm, '%')) " +
+		"or lower(c.lastName) like lower(concat('%', :searchTerm, '%')) " +
+		"or lower(c.email) like lower(concat('%', :searchTerm, '%'))")
+  Stream<ContactRow> streamRowSearch(@Param("searchTerm") String searchTerm);
+
+  @Query("select c.id, c.firstName, c.lastName, c.email from Contact c where c.id > :afterId order by c.id")
+  List<Object[]> findSearchFieldsAfter(@Param("afterId") long afterId, Pageable pageable);
+
+  @Query("select c.status, count(c.id) from Contact c group by c.status")
+  List<Object[]> countByStatus();
+
+  @Query("select co.id, count(c.id) from Contact c left join c.company co group by co.id")
+  List<Object[]> countByCompany();
+
+  // a renamed company changes the rows of its contacts too
+  @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+  @Query(ROW_SELECT + " where c.version > :since or co.version > :since")
+  Stream<ContactRow> streamRowsChangedSince(@Param("since") long since);
+
+  @Query("select coalesce(max(c.version), 0) from Contact c")
+  long maxVersion();
 }
 
 /*
- * 	Security
+ * Keyset (seek) queries over contact rows, rows come back in listing order for both cursor directions.
  */
-@EnableWebSecurity
-@Configuration
-class SecurityConfiguration extends WebSecurityConfigurerAdapter {
-  private static final String LOGIN_PROCESSING_URL = "/login";
-  private static final String LOGIN_FAILURE_URL = "/login?error";
-  private static final String LOGIN_URL = "/login";
-  private static final String LOGOUT_SUCCESS_URL = "/login";
+interface ContactKeysetRepository {
+  List<ContactRow> seek(KeysetCursor cursor, int limit);
+
+  List<ContactRow> seekSearch(KeysetCursor cursor, String searchTerm, int limit);
+
+  List<ContactRow> seekIn(KeysetCursor cursor, Collection<Long> ids, int limit);
+}
+
+class ContactKeysetRepositoryImpl implements ContactKeysetRepository {
+  private static final String SEARCH = "(lower(c.firstName) like lower(concat('%', :searchTerm, '%')) " +
+		"or lower(c.lastName) like lower(concat('%', :searchTerm, '%')) " +
+		"or lower(c.email) like lower(concat('%', :searchTerm, '%')))";
+
+  @PersistenceContext
+  private EntityManager entityManager;
 
   @Override
-  protected void configure(HttpSecurity http) throws Exception {
-	http.csrf().disable()
-		  .requestCache().requestCache(new CustomRequestCache())
-		  .and().authorizeRequests()
-		  .requestMatchers(SecurityUtils::isFrameworkInternalRequest).permitAll()
-		  .anyRequest().authenticated()
-		  .and().formLogin()
-		  .loginPage(LOGIN_URL).permitAll()
-		  .loginProcessingUrl(LOGIN_PROCESSING_URL)
-		  .failureUrl(LOGIN_FAILURE_URL)
-		  .and().logout().logoutSuccessUrl(LOGOUT_SUCCESS_URL);
+  public List<ContactRow> seek(KeysetCursor cursor, int limit) {
+	return seek(cursor, null, null, null, limit);
   }
 
-  @Bean
   @Override
-  public UserDetailsService userDetailsService() {
-	UserDetails user = User.withUsername("user").password("{noop}password").roles("USER").build();
-
-	return new InMemoryUserDetailsManager(user);
+  public List<ContactRow> seekSearch(KeysetCursor cursor, String searchTerm, int limit) {
+	return seek(cursor, SEARCH, "searchTerm", searchTerm, limit);
   }
 
   @Override
-  public void configure(WebSecurity web) {
-	web.ignoring().antMatchers(
-		  "/VAADIN/**",
-		  "/favicon.ico",
-		  "/robots.txt",
-		  "/manifest.webmanifest",
-		  "/sw.js",
-		  "/offline.html",
-		  "/icons/**",
-		  "/images/**",
-		  "/styles/**",
-		  "/h2-console/**",
-		  "/static/**");
+  public List<ContactRow> seekIn(KeysetCursor cursor, Collection<Long> ids, int limit) {
+	return seek(cursor, "c.id in :ids", "ids", ids, limit);
   }
-}
 
-final class SecurityUtils {
-  private SecurityUtils() {
+  /*
+   * Scans away from the cursor: backward cursors run the reversed order and flip the rows afterwards.
+   * Nulls sort after every value (Postgres' default) and are read as a separate segment, which keeps
+   * each query a plain range scan over the (column, id) index.
+   */
+  private List<ContactRow> seek(KeysetCursor cursor, String filter, String filterName, Object filterValue, int limit) {
+	boolean ascending = cursor.isAscending() != cursor.isBackward();
+	List<ContactRow> rows = new ArrayList<>();
+	if (cursor.isIdOnly()) {
+	  rows.addAll(query(cursor, filter, filterName, filterValue, null, ascending, cursor.isKeyed(), limit));
+	} else {
+	  List<Boolean> segments = ascending ? Arrays.asList(false, true) : Arrays.asList(true, false);
+	  int first = cursor.isKeyed() ? segments.indexOf(cursor.getValue() == null) : 0;
+	  for (int i = first; i < segments.size() && rows.size() < limit; i++) {
+		rows.addAll(query(cursor, filter, filterName, filterValue, segments.get(i), ascending,
+			  cursor.isKeyed() && i == first, limit - rows.size()));
+	  }
+	}
+	if (cursor.isBackward()) {
+	  Collections.reverse(rows);
+	}
+	return rows;
   }
 
-  static boolean isFrameworkInternalRequest(HttpServletRequest request) {
-	final String parameterValue = request.getParameter(ApplicationConstants.REQUEST_TYPE_PARAMETER);
-	return parameterValue != null && Stream.of(ServletHelper.RequestType.values()).anyMatch(r -> r.getIdentifier().equals(parameterValue));
+  private List<ContactRow> query(KeysetCursor cursor, String filter, String filterName, Object filterValue,
+							  Boolean nulls, boolean ascending, boolean keyed, int limit) {
+	String column = "c." + cursor.getProperty();
+	String operator = ascending ? ">" : "<";
+	List<String> where = new ArrayList<>();
+	if (filter != null) {
+	  where.add(filter);
+	}
+	if (nulls != null) {
+	  where.add(column + (nulls ? " is null" : " is not null"));
+	}
+	if (keyed && (nulls == null || nulls)) {
+	  where.add("c.id " + operator + " :id");
+	} else if (keyed) {
+	  where.add(column + " " + operator + "= :value and (" + column + " " + operator + " :value or c.id " + operator + " :id)");
+	}
+	String direction = ascending ? " asc" : " desc";
+	TypedQuery<ContactRow> query = entityManager.createQuery(ContactRepository.ROW_SELECT
+		  + (where.isEmpty() ? "" : " where " + String.join(" and ", where))
+		  + " order by " + (nulls == null || nulls ? "" : column + direction + ", ") + "c.id" + direction, ContactRow.class)
+		  .setMaxResults(limit)
+		  .setHint(HINT_CACHEABLE, true)
+		  .setHint(HINT_CACHE_REGION, SecondLevelCacheConfiguration.CONTACT_ROWS_REGION);
+	if (filterName != null) {
+	  query.setParameter(filterName, filterValue);
+	}
+	if (keyed) {
+	  query.setParameter("id", cursor.getId());
+	  if (nulls != null && !nulls) {
+		query.setParameter("value", cursor.getValue());
+	  }
+	}
+	return query.getResultList();
   }
+}
 
-  static boolean isUserLoggedIn() {
-	Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-	return authentication != null
-		  && !(authentication instanceof AnonymousAuthenticationToken)
-		  && authentication.isAuthenticated();
-  }
+@Repository
+interface UserAccountRepository extends JpaRepository<UserAccount, Long> {
+  Optional<UserAccount> findByUsername(String username);
 }
 
-class CustomRequestCache extends HttpSessionRequestCache {
-  @Override
-  public void saveRequest(HttpServletRequest request, HttpServletResponse response) {
-	if (!SecurityUtils.isFrameworkInternalRequest(request)) {
-	  super.saveRequest(request, response);
-	}
-  }
+@Repository
+interface CompanyRepository extends JpaRepository<Company, Long> {
+  @Query("select co.name, count(c.id) from Company co left join co.employees c group by co.id, co.name")
+  List<Object[]> countEmployeesByCompany();
+
+  @Query("select coalesce(max(co.version), 0) from Company co")
+  long maxVersion();
+}
+
+@Repository
+interface ContactTombstoneRepository extends JpaRepository<ContactTombstone, Long> {
+  @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+  @Query("select t.contactId from ContactTombstone t where t.version > :since")
+  Stream<Long> streamContactIdsDeletedSince(@Param("since") long since);
+
+  @Query("select coalesce(max(t.version), 0) from ContactTombstone t")
+  long maxVersion();
 }
 
 /*
- *	Components
+ * Hibernate second-level and query cache on the in-process Caffeine JCache provider. Every region is
+ * created here with its own size bound and expiry, Hibernate refuses to start with an unlisted one.
+ * Contacts cache the company id, so Contact.company resolves from the company region. Per-region hits,
+ * misses, puts and evictions are published as cache metrics tagged cache=hibernate.<region>.
  */
-@org.springframework.stereotype.Component
-class ConfigureUIServiceInitListener implements VaadinServiceInitListener {
+@Configuration
+class SecondLevelCacheConfiguration {
+  static final String COMPANY_REGION = "company";
+  static final String CONTACT_REGION = "contact";
+  static final String CONTACT_SEARCH_REGION = "contact-search";
+  static final String CONTACT_ROWS_REGION = "contact-rows";
+  static final String REGION_PREFIX = "hibernate";
 
-  @Override
-  public void serviceInit(ServiceInitEvent event) {
-	event.getSource().addUIInitListener(uiEvent -> uiEvent.getUI().addBeforeEnterListener(this::authenticateNavigation));
+  // a provider per context, tests and benchmarks start several contexts in one JVM
+  @Bean(destroyMethod = "close")
+  public CachingProvider secondLevelCachingProvider() {
+	return new CaffeineCachingProvider();
   }
 
-  private void authenticateNavigation(BeforeEnterEvent event) {
-	if (!LoginView.class.equals(event.getNavigationTarget()) && !SecurityUtils.isUserLoggedIn()) {
-	  event.rerouteTo(LoginView.class);
+  @Bean(destroyMethod = "close")
+  public CacheManager secondLevelCacheManager(CachingProvider secondLevelCachingProvider,
+											  @Value("${custom.value.cache.second-level.ttl-seconds:600}") long ttlSeconds,
+											  @Value("${custom.value.cache.second-level.company.max-size:10000}") long companies,
+											  @Value("${custom.value.cache.second-level.contact.max-size:50000}") long contacts,
+											  @Value("${custom.value.cache.second-level.contact-search.max-size:1000}") long searches,
+											  @Value("${custom.value.cache.second-level.contact-rows.max-size:2000}") long rows) {
+	// statistics are registered in JMX under the manager URI, so each context gets its own
+	URI uri = URI.create(REGION_PREFIX + ":" + Integer.toHexString(System.identityHashCode(secondLevelCachingProvider)));
+	CacheManager cacheManager = secondLevelCachingProvider.getCacheManager(uri, getClass().getClassLoader());
+	createRegion(cacheManager, COMPANY_REGION, companies, ttlSeconds);
+	createRegion(cacheManager, CONTACT_REGION, contacts, ttlSeconds);
+	createRegion(cacheManager, CONTACT_SEARCH_REGION, searches, ttlSeconds);
+	createRegion(cacheManager, CONTACT_ROWS_REGION, rows, ttlSeconds);
+	createRegion(cacheManager, RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME, searches, ttlSeconds);
+	// one entry per table, a cached query result is only valid while its tables' timestamps are still here
+	createRegion(cacheManager, RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME, 1000, 0);
+	return cacheManager;
+  }
+
+  @Bean
+  public HibernatePropertiesCustomizer secondLevelCacheProperties(CacheManager secondLevelCacheManager) {
+	return properties -> {
+	  properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+	  // on unless spring.jpa.properties turns it off, benchmarks measure the queries behind the cache that way
+	  properties.putIfAbsent(AvailableSettings.USE_QUERY_CACHE, true);
+	  properties.put(AvailableSettings.CACHE_REGION_FACTORY, JCacheRegionFactory.class.getName());
+	  properties.put(AvailableSettings.CACHE_REGION_PREFIX, REGION_PREFIX);
+	  properties.put(ConfigSettings.CACHE_MANAGER, secondLevelCacheManager);
+	  properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, MissingCacheStrategy.FAIL.getExternalRepresentation());
+	};
+  }
+
+  @Bean
+  public MeterBinder secondLevelCacheMetrics(CacheManager secondLevelCacheManager) {
+	return registry -> secondLevelCacheManager.getCacheNames().forEach(region ->
+		  JCacheMetrics.monitor(registry, secondLevelCacheManager.getCache(region)));
+  }
+
+  // ttl 0 keeps entries until they are evicted by size
+  private static void createRegion(CacheManager cacheManager, String region, long maxSize, long ttlSeconds) {
+	CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+	configuration.setMaximumSize(OptionalLong.of(maxSize));
+	if (ttlSeconds > 0) {
+	  configuration.setExpireAfterWrite(OptionalLong.of(TimeUnit.SECONDS.toNanos(ttlSeconds)));
 	}
+	configuration.setStatisticsEnabled(true);
+	cacheManager.createCache(REGION_PREFIX + "." + region, configuration);
   }
 }
 
 /*
- * 	Model
+ * Primary and replica pools behind one routing DataSource, only created when a replica URL is set.
+ * The lazy proxy defers the connection until the first statement, when Spring has already marked
+ * the transaction read-only.
  */
-@MappedSuperclass
-abstract class AbstractEntity {
-  @Id
-  @GeneratedValue(strategy = GenerationType.SEQUENCE)
-  private Long id;
+@Configuration
+@ConditionalOnProperty("custom.value.datasource.replica.url")
+class DataSourceRoutingConfiguration {
 
-  public Long getId() {
-	return id;
+  // not DataSource beans themselves, the datasource initializer would otherwise recurse into the routing bean
+  @Bean
+  public ReplicaPools replicaPools(DataSourceProperties properties, Environment environment,
+								   @Value("${custom.value.datasource.replica.url}") String url,
+								   @Value("${custom.value.datasource.replica.username:${spring.datasource.username:}}") String username,
+								   @Value("${custom.value.datasource.replica.password:${spring.datasource.password:}}") String password) {
+	org.springframework.boot.context.properties.bind.Binder binder =
+		  org.springframework.boot.context.properties.bind.Binder.get(environment);
+	HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+	binder.bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+	primary.setPoolName("primary");
+
+	HikariDataSource replica = DataSourceBuilder.create().type(HikariDataSource.class)
+		  .url(url)
+		  .username(username)
+		  .password(password)
+		  .build();
+	binder.bind("custom.value.datasource.replica.hikari", Bindable.ofInstance(replica));
+	replica.setPoolName("replica");
+	replica.setReadOnly(true);
+	return new ReplicaPools(primary, replica);
   }
 
-  public boolean isPersisted() {
-	return id != null;
+  @Bean
+  @Primary
+  public DataSource dataSource(ReplicaPools replicaPools, ReadYourWrites readYourWrites) {
+	ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(readYourWrites);
+	Map<Object, Object> targets = new HashMap<>();
+	targets.put(ReplicaRoutingDataSource.Target.PRIMARY, replicaPools.getPrimary());
+	targets.put(ReplicaRoutingDataSource.Target.REPLICA, replicaPools.getReplica());
+	routing.setTargetDataSources(targets);
+	routing.setDefaultTargetDataSource(replicaPools.getPrimary());
+	routing.afterPropertiesSet();
+	return new LazyConnectionDataSourceProxy(routing);
+  }
+}
+
+class ReplicaPools implements Closeable {
+  private final HikariDataSource primary;
+  private final HikariDataSource replica;
+
+  ReplicaPools(HikariDataSource primary, HikariDataSource replica) {
+	this.primary = primary;
+	this.replica = replica;
+  }
+
+  HikariDataSource getPrimary() {
+	return primary;
+  }
+
+  HikariDataSource getReplica() {
+	return replica;
   }
 
   @Override
-  public int hashCode() {
-	if (getId() != null) {
-	  return getId().hashCode();
-	}
-	return super.hashCode();
+  public void close() {
+	replica.close();
+	primary.close();
+  }
+}
+
+/*
+ * Read-only transactions go to the replica unless the current session wrote within the replica lag window.
+ */
+class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+  enum Target {PRIMARY, REPLICA}
+
+  private final ReadYourWrites readYourWrites;
+
+  ReplicaRoutingDataSource(ReadYourWrites readYourWrites) {
+	this.readYourWrites = readYourWrites;
   }
 
   @Override
-  public boolean equals(Object obj) {
-	if (this == obj) {
-	  return true;
-	}
-	if (obj == null) {
-	  return false;
-	}
-	if (getClass() != obj.getClass()) {
-	  return false;
+  protected Object determineCurrentLookupKey() {
+	if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+	  return readYourWrites.pinnedToPrimary() ? Target.PRIMARY : Target.REPLICA;
 	}
-	AbstractEntity other = (AbstractEntity) obj;
-	if (getId() == null || other.getId() == null) {
-	  return false;
+	// connections outside a transaction use the primary too, but only read-write transactions count as writes
+	if (TransactionSynchronizationManager.isActualTransactionActive()) {
+	  readYourWrites.recordWrite();
 	}
-	return getId().equals(other.getId());
+	return Target.PRIMARY;
   }
 }
 
-@Entity
-class Contact extends AbstractEntity implements Cloneable {
+/*
+ * Per-session time of the last write on the primary. The marker lives in the HTTP session and is
+ * handed to background threads explicitly, since those run without a current VaadinSession.
+ */
+@org.springframework.stereotype.Component
+class ReadYourWrites {
+  private static final ThreadLocal<Marker> BOUND = new ThreadLocal<>();
 
-  public enum Status {
-	ImportedLead, NotContacted, Contacted, Customer, ClosedLost
+  private final long maxLagNanos;
+
+  public ReadYourWrites(@Value("${custom.value.datasource.replica.max-lag-millis:2000}") long maxLagMillis) {
+	this.maxLagNanos = TimeUnit.MILLISECONDS.toNanos(maxLagMillis);
   }
 
-  //  @NotNull
-//  @NotEmpty
-  private String firstName = "";
+  static final class Marker implements Serializable {
+	private volatile long lastWrite;
+	private volatile boolean written;
+  }
 
-  //  @NotNull
-//  @NotEmpty
-  private String lastName = "";
+  void recordWrite() {
+	Marker marker = current();
+	if (marker != null) {
+	  marker.lastWrite = System.nanoTime();
+	  marker.written = true;
+	}
+  }
 
-  @ManyToOne
-  @JoinColumn(name = "company_id")
-  private Company company;
+  boolean pinnedToPrimary() {
+	Marker marker = current();
+	return marker != null && marker.written && System.nanoTime() - marker.lastWrite < maxLagNanos;
+  }
 
-  @Enumerated(EnumType.STRING)
-//  @NotNull
-  private Contact.Status status;
+  <T> Supplier<T> propagate(Supplier<T> work) {
+	Marker marker = current();
+	return () -> within(marker, work);
+  }
 
-  //  @Email
-//  @NotNull
-//  @NotEmpty
-  private String email = "";
+  <T> T within(Marker marker, Supplier<T> work) {
+	Marker previous = BOUND.get();
+	BOUND.set(marker);
+	try {
+	  return work.get();
+	} finally {
+	  if (previous == null) {
+		BOUND.remove();
+	  } else {
+		BOUND.set(previous);
+	  }
+	}
+  }
 
-  public String getEmail() {
-	return email;
+  Marker current() {
+	Marker bound = BOUND.get();
+	if (bound != null) {
+	  return bound;
+	}
+	VaadinSession vaadinSession = VaadinSession.getCurrent();
+	WrappedSession session = vaadinSession == null ? null : vaadinSession.getSession();
+	if (session == null) {
+	  return null;
+	}
+	String key = Marker.class.getName();
+	synchronized (session) {
+	  Marker marker = (Marker) session.getAttribute(key);
+	  if (marker == null) {
+		marker = new Marker();
+		session.setAttribute(key, marker);
+	  }
+	  return marker;
+	}
   }
+}
 
-  public void setEmail(String email) {
-	this.email = email;
+/*
+ * 	Security
+ */
+@EnableWebSecurity
+@Configuration
+class SecurityConfiguration extends WebSecurityConfigurerAdapter {
+  private static final String LOGIN_PROCESSING_URL = "/login";
+  private static final String LOGIN_FAILURE_URL = "/login?error";
+  private static final String LOGIN_URL = "/login";
+  private static final String LOGOUT_SUCCESS_URL = "/login";
+
+  private final UserDetailsService userDetailsService;
+  private final PasswordEncoder passwordEncoder;
+  private final UserCache userCache;
+
+  public SecurityConfiguration(UserDetailsService userDetailsService, PasswordEncoder passwordEncoder, UserCache userCache) {
+	this.userDetailsService = userDetailsService;
+	this.passwordEncoder = passwordEncoder;
+	this.userCache = userCache;
   }
 
-  public Status getStatus() {
-	return status;
+  @Override
+  protected void configure(HttpSecurity http) throws Exception {
+	http.csrf().disable()
+		  .requestCache().requestCache(new CustomRequestCache())
+		  .and().authorizeRequests()
+		  .requestMatchers(SecurityUtils::isFrameworkInternalRequest).permitAll()
+		  .requestMatchers(EndpointRequest.to(HealthEndpoint.class, PrometheusScrapeEndpoint.class)).permitAll()
+		  .requestMatchers(EndpointRequest.to(SeedEndpoint.class)).hasRole(MemoryView.ROLE)
+		  .anyRequest().authenticated()
+		  .and().formLogin()
+		  .loginPage(LOGIN_URL).permitAll()
+		  .loginProcessingUrl(LOGIN_PROCESSING_URL)
+		  .failureUrl(LOGIN_FAILURE_URL)
+		  .and().logout().logoutSuccessUrl(LOGOUT_SUCCESS_URL)
+		  // integration clients of the sync API authenticate per request
+		  .and().httpBasic();
   }
 
-  public void setStatus(Status status) {
-	this.status = status;
+  @Override
+  protected void configure(AuthenticationManagerBuilder auth) {
+	auth.authenticationProvider(authenticationProvider());
   }
 
-  public String getLastName() {
-	return lastName;
+  @Bean
+  public DaoAuthenticationProvider authenticationProvider() {
+	DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+	provider.setUserDetailsService(userDetailsService);
+	provider.setPasswordEncoder(passwordEncoder);
+	provider.setUserCache(userCache);
+	if (userDetailsService instanceof UserDetailsPasswordService) {
+	  provider.setUserDetailsPasswordService((UserDetailsPasswordService) userDetailsService);
+	}
+	return provider;
   }
 
-  public void setLastName(String lastName) {
-	this.lastName = lastName;
+  @Override
+  public void configure(WebSecurity web) {
+	web.ignoring().antMatchers(
+		  "/VAADIN/**",
+		  "/favicon.ico",
+		  "/robots.txt",
+		  "/manifest.webmanifest",
+		  "/sw.js",
+		  "/offline.html",
+		  "/icons/**",
+		  "/images/**",
+		  "/styles/**",
+		  "/h2-console/**",
+		  "/static/**");
   }
+}
 
-  public String getFirstName() {
-	return firstName;
+final class SecurityUtils {
+  private SecurityUtils() {
   }
 
-  public void setFirstName(String firstName) {
-	this.firstName = firstName;
+  static boolean isFrameworkInternalRequest(HttpServletRequest request) {
+	final String parameterValue = request.getParameter(ApplicationConstants.REQUEST_TYPE_PARAMETER);
+	return parameterValue != null && Stream.of(ServletHelper.RequestType.values()).anyMatch(r -> r.getIdentifier().equals(parameterValue));
   }
 
-  public void setCompany(Company company) {
-	this.company = company;
+  static boolean hasRole(String role) {
+	Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+	return authentication != null
+		  && authentication.getAuthorities().stream().anyMatch(authority -> ("ROLE_" + role).equals(authority.getAuthority()));
   }
 
-  public Company getCompany() {
-	return company;
+  static boolean isUserLoggedIn() {
+	Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+	return authentication != null
+		  && !(authentication instanceof AnonymousAuthenticationToken)
+		  && authentication.isAuthenticated();
   }
+}
 
-  @Override
-  public String toString() {
-	return firstName + " " + lastName;
+/*
+ * User store is pluggable through custom.value.security.user-store, jpa (default) or memory.
+ */
+@Log
+@Configuration
+class UserStoreConfiguration {
+  static final String DEFAULT_USER = "default-user";
+  static final String ADMIN = "admin";
+  static final String USER_ROLE = "USER";
+
+  @Bean
+  @ConditionalOnProperty(name = "custom.value.security.user-store", havingValue = "jpa", matchIfMissing = true)
+  public JpaUserDetailsService jpaUserDetailsService(UserAccountRepository userAccountRepository,
+													 PasswordEncoder passwordEncoder,
+													 UserCache userCache,
+													 PlatformTransactionManager transactionManager,
+													 @Value("${custom.value.security.default-user.username:}") String defaultUsername,
+													 @Value("${custom.value.security.default-user.password:}") String defaultPassword,
+													 @Value("${custom.value.security.admin.username:}") String adminUsername,
+													 @Value("${custom.value.security.admin.password:}") String adminPassword) {
+	return new JpaUserDetailsService(userAccountRepository, passwordEncoder, userCache,
+		  new TransactionTemplate(transactionManager), defaultUsername, defaultPassword, adminUsername, adminPassword);
+  }
+
+  @Bean
+  @ConditionalOnProperty(name = "custom.value.security.user-store", havingValue = "memory")
+  public UserDetailsService inMemoryUserDetailsService(PasswordEncoder passwordEncoder,
+													  @Value("${custom.value.security.default-user.username:}") String defaultUsername,
+													  @Value("${custom.value.security.default-user.password:}") String defaultPassword,
+													  @Value("${custom.value.security.admin.username:}") String adminUsername,
+													  @Value("${custom.value.security.admin.password:}") String adminPassword) {
+	InMemoryUserDetailsManager users = new InMemoryUserDetailsManager();
+	if (isConfigured(DEFAULT_USER, defaultUsername, defaultPassword)) {
+	  users.createUser(User.withUsername(defaultUsername).password(passwordEncoder.encode(defaultPassword)).roles(USER_ROLE).build());
+	}
+	if (isConfigured(ADMIN, adminUsername, adminPassword)) {
+	  users.createUser(User.withUsername(adminUsername).password(passwordEncoder.encode(adminPassword)).roles(MemoryView.ROLE).build());
+	}
+	return users;
   }
 
+  // accounts are only bootstrapped from configuration, there are no built-in credentials
+  static boolean isConfigured(String account, String username, String password) {
+	if (username == null || username.isEmpty() || password == null || password.isEmpty()) {
+	  log.info("custom.value.security." + account + ".username/password not set, no " + account + " account is bootstrapped");
+	  return false;
+	}
+	return true;
+  }
 }
 
-@Entity
-class Company extends AbstractEntity {
-  private String name;
+/*
+ * Users from the user_account table. Passwords stored with an outdated encoding are rehashed
+ * by DaoAuthenticationProvider on the next successful login through updatePassword.
+ */
+@Log
+class JpaUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
+  private final UserAccountRepository userAccountRepository;
+  private final PasswordEncoder passwordEncoder;
+  private final UserCache userCache;
+  private final TransactionTemplate transactionTemplate;
+  private final String defaultUsername;
+  private final String defaultPassword;
+  private final String adminUsername;
+  private final String adminPassword;
 
-  @OneToMany(mappedBy = "company", fetch = FetchType.EAGER)
-  private final List<Contact> employees = new LinkedList<>();
+  JpaUserDetailsService(UserAccountRepository userAccountRepository, PasswordEncoder passwordEncoder, UserCache userCache,
+						TransactionTemplate transactionTemplate, String defaultUsername, String defaultPassword,
+						String adminUsername, String adminPassword) {
+	this.userAccountRepository = userAccountRepository;
+	this.passwordEncoder = passwordEncoder;
+	this.userCache = userCache;
+	this.transactionTemplate = transactionTemplate;
+	this.defaultUsername = defaultUsername;
+	this.defaultPassword = defaultPassword;
+	this.adminUsername = adminUsername;
+	this.adminPassword = adminPassword;
+  }
 
-  public Company() {
+  // configured accounts that are missing are created, existing ones keep the password they have
+  @PostConstruct
+  public void populateDefaultUser() {
+	transactionTemplate.executeWithoutResult(status -> {
+	  bootstrap(UserStoreConfiguration.DEFAULT_USER, defaultUsername, defaultPassword, UserStoreConfiguration.USER_ROLE);
+	  bootstrap(UserStoreConfiguration.ADMIN, adminUsername, adminPassword, MemoryView.ROLE);
+	});
   }
 
-  public Company(String name) {
-	setName(name);
+  private void bootstrap(String account, String username, String password, String role) {
+	if (UserStoreConfiguration.isConfigured(account, username, password)
+		  && !userAccountRepository.findByUsername(username).isPresent()) {
+	  userAccountRepository.save(new UserAccount(username, passwordEncoder.encode(password), role));
+	}
   }
 
-  public String getName() {
-	return name;
+  @Override
+  public UserDetails loadUserByUsername(String username) {
+	return userAccountRepository.findByUsername(username)
+		  .map(JpaUserDetailsService::toUserDetails)
+		  .orElseThrow(() -> new UsernameNotFoundException(username));
   }
 
-  public void setName(String name) {
-	this.name = name;
+  @Override
+  @Transactional
+  public UserDetails updatePassword(UserDetails user, String newPassword) {
+	UserAccount account = userAccountRepository.findByUsername(user.getUsername())
+		  .orElseThrow(() -> new UsernameNotFoundException(user.getUsername()));
+	account.setPasswordHash(newPassword);
+	userAccountRepository.save(account);
+	userCache.removeUserFromCache(user.getUsername());
+	log.info("Rehashed password of " + user.getUsername());
+	return toUserDetails(account);
   }
 
-  public List<Contact> getEmployees() {
-	return employees;
+  private static UserDetails toUserDetails(UserAccount account) {
+	return User.withUsername(account.getUsername())
+		  .password(account.getPasswordHash())
+		  .roles(account.getRole())
+		  .disabled(!account.isEnabled())
+		  .build();
   }
 }
 
 /*
- * 	Service
+ * Bounded, short lived cache of loaded users, saves the user store lookup per login.
  */
-@Service
-class GreetService {
-  public String greet(String name) {
-	if (name == null || name.isEmpty()) {
-	  return "Hello anonymous user";
-	} else {
-	  return "Hello " + name;
-	}
+@org.springframework.stereotype.Component
+class CaffeineUserCache implements UserCache, MeterBinder, MemoryPressureListener {
+  private final Cache<String, UserDetails> users;
+
+  public CaffeineUserCache(@Value("${custom.value.security.user-cache.max-size:10000}") long maxSize,
+						   @Value("${custom.value.security.user-cache.ttl-seconds:300}") long ttlSeconds) {
+	this.users = Caffeine.newBuilder()
+		  .maximumSize(maxSize)
+		  .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+		  .recordStats()
+		  .build();
   }
-}
 
-@Service
-class CompanyService {
+  // copies in both directions, ProviderManager erases the password of the principal it hands out
+  @Override
+  public UserDetails getUserFromCache(String username) {
+	UserDetails user = users.getIfPresent(username);
+	return user == null ? null : User.withUserDetails(user).build();
+  }
 
-  private final CompanyRepository companyRepository;
+  @Override
+  public void putUserInCache(UserDetails user) {
+	users.put(user.getUsername(), User.withUserDetails(user).build());
+  }
 
-  public CompanyService(CompanyRepository companyRepository) {
-	this.companyRepository = companyRepository;
+  @Override
+  public void removeUserFromCache(String username) {
+	users.invalidate(username);
   }
 
-  public List<Company> findAll() {
-	return companyRepository.findAll();
+  CacheStats stats() {
+	return users.stats();
   }
 
-  public Map<String, Integer> getStats() {
-	HashMap<String, Integer> stats = new HashMap<>();
-	findAll().forEach(company ->
-		  stats.put(company.getName(), company.getEmployees().size()));
-	return stats;
+  @Override
+  public void onMemoryPressure() {
+	users.invalidateAll();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+	CaffeineCacheMetrics.monitor(registry, users, "users");
   }
 }
 
-@Log
-@Service
-class ContactService {
-  private static final Logger LOGGER = Logger.getLogger(ContactService.class.getName());
-  private final ContactRepository contactRepository;
-  private final CompanyRepository companyRepository;
+/*
+ * Delegating encoder (bcrypt by default) that remembers successful verifications for a short TTL.
+ * Entries are keyed by an HMAC-SHA256 of stored hash and raw password under a per-process random key,
+ * so a repeated login costs one HMAC instead of a bcrypt round and a changed hash never matches.
+ */
+@org.springframework.stereotype.Component
+class CachingPasswordEncoder implements PasswordEncoder, MeterBinder, MemoryPressureListener {
+  private final PasswordEncoder delegate;
+  private final Cache<String, Boolean> verified;
+  private final byte[] key = new byte[32];
 
-  public ContactService(ContactRepository contactRepository,
-						CompanyRepository companyRepository) {
-	this.contactRepository = contactRepository;
-	this.companyRepository = companyRepository;
+  @Autowired
+  public CachingPasswordEncoder(@Value("${custom.value.security.credential-cache.max-size:10000}") long maxSize,
+								@Value("${custom.value.security.credential-cache.ttl-seconds:60}") long ttlSeconds) {
+	this(PasswordEncoderFactories.createDelegatingPasswordEncoder(), maxSize, ttlSeconds);
   }
 
-  public List<Contact> findAll() {
-	return contactRepository.findAll();
+  CachingPasswordEncoder(PasswordEncoder delegate, long maxSize, long ttlSeconds) {
+	this.delegate = delegate;
+	new SecureRandom().nextBytes(key);
+	this.verified = Caffeine.newBuilder()
+		  .maximumSize(maxSize)
+		  .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+		  .recordStats()
+		  .build();
   }
 
-  public List<Contact> findAll(String filterText) {
-	if (filterText == null || filterText.isEmpty()) {
-	  return contactRepository.findAll();
-	} else {
-	  return contactRepository.search(filterText);
+  @Override
+  public String encode(CharSequence rawPassword) {
+	return delegate.encode(rawPassword);
+  }
+
+  @Override
+  public boolean matches(CharSequence rawPassword, String encodedPassword) {
+	if (rawPassword == null || encodedPassword == null) {
+	  return delegate.matches(rawPassword, encodedPassword);
+	}
+	String fingerprint = fingerprint(rawPassword, encodedPassword);
+	if (verified.getIfPresent(fingerprint) != null) {
+	  return true;
+	}
+	boolean matches = delegate.matches(rawPassword, encodedPassword);
+	if (matches) {
+	  verified.put(fingerprint, Boolean.TRUE);
 	}
+	return matches;
   }
 
-  public long count() {
-	return contactRepository.count();
+  @Override
+  public boolean upgradeEncoding(String encodedPassword) {
+	return delegate.upgradeEncoding(encodedPassword);
   }
 
-  public void delete(Contact contact) {
-	contactRepository.delete(contact);
+  CacheStats stats() {
+	return verified.stats();
   }
 
-  public void save(Contact contact) {
-	if (contact == null) {
-	  LOGGER.log(Level.SEVERE,
-			"Contact is null. Are you sure you have connected your form to the application?");
-	  return;
-	}
-	contactRepository.save(contact);
+  @Override
+  public void onMemoryPressure() {
+	verified.invalidateAll();
   }
 
-  @PostConstruct
-  public void populateTestData() {
-	if (companyRepository.count() == 0) {
-	  companyRepository.saveAll(
-			Stream.of("Path-Way Electronics", "E-Tech Management", "Path-E-Tech Management")
-				  .map(Company::new)
-				  .collect(Collectors.toList()));
-	}
-
-	if (contactRepository.count() == 0) {
-	  Random r = new Random(0);
-	  List<Company> companies = companyRepository.findAll();
-	  contactRepository.saveAll(
-			Stream.of("Gabrielle Patel", "Brian Robinson", "Eduardo Haugen",
-				  "Koen Johansen", "Alejandro Macdonald", "Angel Karlsson", "Yahir Gustavsson", "Haiden Svensson",
-				  "Emily Stewart", "Corinne Davis", "Ryann Davis", "Yurem Jackson", "Kelly Gustavsson",
-				  "Jaydan Jackson", "Bernard Nilsen")
-				  .map(name -> {
-					String[] split = name.split(" ");
-					Contact contact = new Contact();
-					contact.setFirstName(split[0]);
-					contact.setLastName(split[1]);
-					contact.setCompany(companies.get(r.nextInt(companies.size())));
-					contact.setStatus(Contact.Status.values()[r.nextInt(Contact.Status.values().length)]);
-					String email = (contact.getFirstName() + "." + contact.getLastName() + "@" + contact.getCompany().getName().replaceAll("[\\s-]", "") + ".com").toLowerCase();
-					contact.setEmail(email);
-					return contact;
-				  }).collect(Collectors.toList()));
+  @Override
+  public void bindTo(MeterRegistry registry) {
+	CaffeineCacheMetrics.monitor(registry, verified, "verified-credentials");
+  }
+
+  private String fingerprint(CharSequence rawPassword, String encodedPassword) {
+	try {
+	  Mac mac = Mac.getInstance("HmacSHA256");
+	  mac.init(new SecretKeySpec(key, "HmacSHA256"));
+	  mac.update(encodedPassword.getBytes(StandardCharsets.UTF_8));
+	  mac.update((byte) 0);
+	  mac.update(rawPassword.toString().getBytes(StandardCharsets.UTF_8));
+	  return Base64.getEncoder().encodeToString(mac.doFinal());
+	} catch (GeneralSecurityException e) {
+	  throw new IllegalStateException(e);
 	}
   }
 }
 
-/*
+class CustomRequestCache extends HttpSessionRequestCache {
+  @Override
+  public void saveRequest(HttpServletRequest request, HttpServletResponse response) {
+	if (!SecurityUtils.isFrameworkInternalRequest(request)) {
+	  super.saveRequest(request, response);
+	}
+  }
+}
+
+/*
+ *	Components
+ */
+@org.springframework.stereotype.Component
+class ConfigureUIServiceInitListener implements VaadinServiceInitListener {
+
+  @Override
+  public void serviceInit(ServiceInitEvent event) {
+	event.getSource().addUIInitListener(uiEvent -> uiEvent.getUI().addBeforeEnterListener(this::authenticateNavigation));
+  }
+
+  private void authenticateNavigation(BeforeEnterEvent event) {
+	if (!LoginView.class.equals(event.getNavigationTarget()) && !SecurityUtils.isUserLoggedIn()) {
+	  event.rerouteTo(LoginView.class);
+	}
+  }
+}
+
+/*
+ * Fans contact changes out to every attached UI over server push. Changes are coalesced per contact id
+ * for a short window; each UI has its own bounded queue and at most one UI.access task in flight,
+ * so a slow client only delays itself. An overflowing queue collapses into a single full refresh.
+ */
+@Log
+@org.springframework.stereotype.Component
+class ContactBroadcaster {
+  private static final String ORIGIN = ContactBroadcaster.class.getName() + ".origin";
+
+  private final AtomicLong origins = new AtomicLong();
+  private final Map<Long, ContactChange> pending = new ConcurrentHashMap<>();
+  private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+  private final AtomicBoolean reset = new AtomicBoolean();
+  private final ScheduledExecutorService scheduler;
+  private final ExecutorService delivery;
+  private final int maxPending;
+
+  public ContactBroadcaster(@Value("${custom.value.push.window-millis:250}") long windowMillis,
+							@Value("${custom.value.push.max-pending:500}") int maxPending,
+							@Value("${custom.value.push.delivery-threads:4}") int deliveryThreads) {
+	this.maxPending = maxPending;
+	this.scheduler = Executors.newSingleThreadScheduledExecutor(DaemonThreads.of("contact-broadcast"));
+	this.delivery = Executors.newFixedThreadPool(deliveryThreads, DaemonThreads.of("contact-push"));
+	scheduler.scheduleWithFixedDelay(this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+  }
+
+  Registration register(UI ui, Consumer<Batch> listener) {
+	if (ComponentUtil.getData(ui, ORIGIN) == null) {
+	  ComponentUtil.setData(ui, ORIGIN, origins.incrementAndGet());
+	}
+	Subscriber subscriber = new Subscriber(ui, (Long) ComponentUtil.getData(ui, ORIGIN), listener);
+	subscribers.add(subscriber);
+	return () -> subscribers.remove(subscriber);
+  }
+
+  void publish(ContactChange.Type type, Contact contact) {
+	if (subscribers.isEmpty() || contact == null || contact.getId() == null) {
+	  return;
+	}
+	pending.merge(contact.getId(), new ContactChange(type, ContactRow.of(contact), origin(UI.getCurrent())), ContactChange::merge);
+  }
+
+  // changes carry the number their UI got when subscribing, queued changes never keep a UI reachable
+  private static long origin(UI ui) {
+	Object origin = ui == null ? null : ComponentUtil.getData(ui, ORIGIN);
+	return origin == null ? 0 : (Long) origin;
+  }
+
+  // Bulk writes that bypass per-contact events, every UI reloads its window
+  void publishReset() {
+	if (!subscribers.isEmpty()) {
+	  reset.set(true);
+	}
+  }
+
+  int subscribers() {
+	return subscribers.size();
+  }
+
+  @PreDestroy
+  void shutdown() {
+	scheduler.shutdownNow();
+	delivery.shutdownNow();
+  }
+
+  void flush() {
+	try {
+	  boolean resetAll = reset.getAndSet(false);
+	  if (pending.isEmpty() && !resetAll) {
+		return;
+	  }
+	  List<ContactChange> batch = new ArrayList<>(pending.size());
+	  for (Long id : pending.keySet()) {
+		ContactChange change = pending.remove(id);
+		if (change != null) {
+		  batch.add(change);
+		}
+	  }
+	  subscribers.forEach(subscriber -> subscriber.offer(batch, resetAll));
+	} catch (RuntimeException e) {
+	  log.log(Level.WARNING, "Contact broadcast failed", e);
+	}
+  }
+
+  static final class Batch {
+	private final List<ContactChange> changes;
+	private final boolean structural;
+
+	Batch(List<ContactChange> changes, boolean reset) {
+	  this.changes = changes;
+	  this.structural = reset || changes.stream().anyMatch(change -> change.getType() != ContactChange.Type.UPDATED);
+	}
+
+	List<ContactChange> getChanges() {
+	  return changes;
+	}
+
+	// rows were added, removed or dropped from an overflowing queue, offsets can't be patched in place
+	boolean isStructural() {
+	  return structural;
+	}
+  }
+
+  private final class Subscriber {
+	private final UI ui;
+	private final long origin;
+	private final Consumer<Batch> listener;
+	private final Map<Long, ContactChange> queue = new LinkedHashMap<>();
+	private boolean overflow;
+	private boolean scheduled;
+
+	Subscriber(UI ui, long origin, Consumer<Batch> listener) {
+	  this.ui = ui;
+	  this.origin = origin;
+	  this.listener = listener;
+	}
+
+	synchronized void offer(List<ContactChange> changes, boolean reset) {
+	  overflow |= reset;
+	  for (ContactChange change : changes) {
+		if (change.getOrigin() != origin) {
+		  queue.merge(change.getRow().getId(), change, ContactChange::merge);
+		}
+	  }
+	  if (queue.size() > maxPending) {
+		queue.clear();
+		overflow = true;
+	  }
+	  if (!scheduled && (overflow || !queue.isEmpty())) {
+		scheduled = true;
+		delivery.execute(this::deliver);
+	  }
+	}
+
+	private synchronized Batch drain() {
+	  Batch batch = new Batch(new ArrayList<>(queue.values()), overflow);
+	  queue.clear();
+	  overflow = false;
+	  scheduled = false;
+	  return batch;
+	}
+
+	private void deliver() {
+	  try {
+		ui.access(() -> listener.accept(drain()));
+	  } catch (UIDetachedException e) {
+		subscribers.remove(this);
+	  }
+	}
+  }
+}
+
+/*
+ * Bounded pool for UI data loads, keeps servlet threads free and caps concurrent queries started
+ * from views. Results are handed back through UI.access, a full queue rejects the load.
+ */
+@org.springframework.stereotype.Component
+class ContactQueryExecutor {
+  private final ThreadPoolExecutor executor;
+  private final ReadYourWrites readYourWrites;
+
+  public ContactQueryExecutor(ReadYourWrites readYourWrites,
+							  @Value("${custom.value.query.max-concurrent:8}") int maxConcurrent,
+							  @Value("${custom.value.query.queue-size:64}") int queueSize) {
+	this.readYourWrites = readYourWrites;
+	this.executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+		  new ArrayBlockingQueue<>(queueSize), DaemonThreads.of("contact-query"), new ThreadPoolExecutor.AbortPolicy());
+	executor.allowCoreThreadTimeOut(true);
+  }
+
+  <T> Future<?> load(UI ui, Supplier<T> query, BiConsumer<Future<?>, T> onResult, BiConsumer<Future<?>, Exception> onError) {
+	CompletableFuture<Future<?>> self = new CompletableFuture<>();
+	Supplier<T> routedQuery = readYourWrites.propagate(query);
+	Future<?> future = executor.submit(() -> {
+	  try {
+		T result = routedQuery.get();
+		if (!Thread.currentThread().isInterrupted()) {
+		  ui.access(() -> onResult.accept(self.join(), result));
+		}
+	  } catch (UIDetachedException e) {
+		// view is gone, nothing to update
+	  } catch (RuntimeException e) {
+		if (!Thread.currentThread().isInterrupted()) {
+		  ui.access(() -> onError.accept(self.join(), e));
+		}
+	  }
+	});
+	self.complete(future);
+	return future;
+  }
+
+  @PreDestroy
+  void shutdown() {
+	executor.shutdownNow();
+  }
+}
+
+/*
+ * Global change versions from a database sequence, shared by every node. A transaction takes one version
+ * the first time it writes a row and stamps all its rows with it. Versions are taken before commit, so a
+ * transaction can commit after a later one. Versions of open transactions are kept until they complete,
+ * and clients are only handed the watermark below the oldest of them, never a version that could still
+ * be followed by an earlier commit.
+ *
+ * Open versions are leased in the change_version_lease table, so the watermark sees those of every node.
+ * Drawing a version and computing the watermark both lock the row with version 0 first, leases run on a
+ * small pool of their own and commit right away. A lease left by a node that died expires after the timeout.
+ */
+@Log
+@org.springframework.stereotype.Component
+class ChangeVersions {
+  static final String SEQUENCE = "change_version_seq";
+  static final String LEASES = "change_version_lease";
+  private static final long LOCK_ROW = 0;
+
+  private final JdbcTemplate jdbcTemplate;
+  // the listener using this is created while the entity manager factory is built
+  private final ObjectProvider<EntityManagerFactory> entityManagerFactory;
+  private final HikariDataSource leasePool;
+  private final long leaseTimeoutMillis;
+  private volatile String nextValueSql;
+  private volatile boolean lockRowPresent;
+
+  public ChangeVersions(JdbcTemplate jdbcTemplate, ObjectProvider<EntityManagerFactory> entityManagerFactory,
+						DataSourceProperties dataSourceProperties,
+						@Value("${custom.value.sync.lease-pool-size:2}") int leasePoolSize,
+						@Value("${custom.value.sync.lease-timeout-seconds:600}") long leaseTimeoutSeconds) {
+	this.jdbcTemplate = jdbcTemplate;
+	this.entityManagerFactory = entityManagerFactory;
+	// a writer waiting on the main pool for its lease connection could otherwise starve it
+	this.leasePool = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+	leasePool.setPoolName("change-versions");
+	leasePool.setMaximumPoolSize(leasePoolSize);
+	this.leaseTimeoutMillis = TimeUnit.SECONDS.toMillis(leaseTimeoutSeconds);
+  }
+
+  long current() {
+	if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+	  return next(jdbcTemplate);
+	}
+	Long version = (Long) TransactionSynchronizationManager.getResource(this);
+	if (version == null) {
+	  long taken = take();
+	  TransactionSynchronizationManager.bindResource(this, taken);
+	  TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+		@Override
+		public void afterCompletion(int status) {
+		  TransactionSynchronizationManager.unbindResourceIfPossible(ChangeVersions.this);
+		  release(taken);
+		}
+	  });
+	  version = taken;
+	}
+	return version;
+  }
+
+  /*
+   * Highest version below which every transaction has completed, capped by the latest committed version
+   * so it only moves when there is something new. Every version below the fresh one had its lease committed
+   * when it was drawn, so the ones without a lease have completed before latestCommitted is read.
+   */
+  long watermark(LongSupplier latestCommitted) {
+	long bound = leased(leases -> {
+	  lock(leases);
+	  int expired = leases.update("delete from " + LEASES + " where version <> ? and taken_at < ?",
+			LOCK_ROW, new Timestamp(System.currentTimeMillis() - leaseTimeoutMillis));
+	  if (expired > 0) {
+		log.warning(expired + " change version leases expired, their transactions are taken as completed");
+	  }
+	  long drawn = next(leases) - 1;
+	  Long oldest = leases.queryForObject("select min(version) from " + LEASES + " where version <> ?", Long.class, LOCK_ROW);
+	  return oldest == null ? drawn : Math.min(drawn, oldest - 1);
+	});
+	return Math.min(bound, latestCommitted.getAsLong());
+  }
+
+  // open versions of all nodes
+  int inFlight() {
+	return jdbcTemplate.queryForObject("select count(*) from " + LEASES + " where version <> ?", Integer.class, LOCK_ROW);
+  }
+
+  @PreDestroy
+  void close() {
+	leasePool.close();
+  }
+
+  private long take() {
+	return leased(leases -> {
+	  lock(leases);
+	  long version = next(leases);
+	  leases.update("insert into " + LEASES + " (version, taken_at) values (?, ?)", version, new Timestamp(System.currentTimeMillis()));
+	  return version;
+	});
+  }
+
+  private void release(long version) {
+	leased(leases -> leases.update("delete from " + LEASES + " where version = ?", version));
+  }
+
+  private void lock(JdbcTemplate leases) {
+	if (!lockRowPresent) {
+	  try {
+		leased(insert -> insert.update("insert into " + LEASES + " (version, taken_at) select " + LOCK_ROW + ", current_timestamp " +
+			  "where not exists (select 1 from " + LEASES + " where version = " + LOCK_ROW + ")"));
+	  } catch (DuplicateKeyException e) {
+		// another node inserted it first
+	  }
+	  lockRowPresent = true;
+	}
+	leases.queryForObject("select version from " + LEASES + " where version = ? for update", Long.class, LOCK_ROW);
+  }
+
+  // one committed transaction on a lease pool connection, apart from whatever transaction the caller is in
+  private <T> T leased(Function<JdbcTemplate, T> work) {
+	try (Connection connection = leasePool.getConnection()) {
+	  connection.setAutoCommit(false);
+	  try {
+		T result = work.apply(new JdbcTemplate(new SingleConnectionDataSource(connection, true)));
+		connection.commit();
+		return result;
+	  } catch (RuntimeException e) {
+		connection.rollback();
+		throw e;
+	  }
+	} catch (SQLException e) {
+	  throw jdbcTemplate.getExceptionTranslator().translate("change version lease", null, e);
+	}
+  }
+
+  private long next(JdbcTemplate jdbc) {
+	if (nextValueSql == null) {
+	  nextValueSql = entityManagerFactory.getObject().unwrap(SessionFactoryImplementor.class)
+			.getJdbcServices().getDialect().getSequenceNextValString(SEQUENCE);
+	}
+	return jdbc.queryForObject(nextValueSql, Long.class);
+  }
+}
+
+/*
+ * Open change version of a transaction on some node, see ChangeVersions. The row with version 0 is only
+ * there to be locked. The sequence is declared here so the generated schema has it, versions are drawn
+ * from it directly and inserted over JDBC.
+ */
+@Entity
+@Table(name = ChangeVersions.LEASES)
+class ChangeVersionLease {
+  @Id
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "change_version")
+  @SequenceGenerator(name = "change_version", sequenceName = ChangeVersions.SEQUENCE, allocationSize = 1)
+  private Long version;
+
+  private Timestamp takenAt;
+
+  protected ChangeVersionLease() {
+  }
+}
+
+/*
+ * Samples an estimated footprint of every Vaadin session on this node, inside session.access so it never
+ * blocks a request. When used heap passes the budget, caches are shrunk and UIs whose heartbeat stopped
+ * are removed from their sessions instead of waiting for the session's next request or timeout.
+ */
+@Log
+@org.springframework.stereotype.Component
+class SessionMemoryMonitor implements VaadinServiceInitListener {
+  private final Map<VaadinSession, SessionFootprint> sessions = new ConcurrentHashMap<>();
+  private final ObjectProvider<MemoryPressureListener> pressureListeners;
+  private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(DaemonThreads.of("session-memory"));
+  private final int heapBudgetPercent;
+  private final long staleUiMillis;
+  private final DistributionSummary sessionBytes;
+  private final Counter pressureEvents;
+  private final Counter evictedUis;
+
+  public SessionMemoryMonitor(MeterRegistry registry,
+							  ObjectProvider<MemoryPressureListener> pressureListeners,
+							  @Value("${custom.value.memory.sample-seconds:30}") long sampleSeconds,
+							  @Value("${custom.value.memory.heap-budget-percent:85}") int heapBudgetPercent,
+							  @Value("${custom.value.memory.stale-ui-seconds:120}") long staleUiSeconds) {
+	this.pressureListeners = pressureListeners;
+	this.heapBudgetPercent = heapBudgetPercent;
+	this.staleUiMillis = TimeUnit.SECONDS.toMillis(staleUiSeconds);
+	Gauge.builder("vsapp.memory.sessions.estimated", this, SessionMemoryMonitor::totalEstimatedBytes)
+		  .baseUnit("bytes").register(registry);
+	Gauge.builder("vsapp.memory.grid.items", this,
+		  monitor -> monitor.footprints().stream().mapToInt(SessionFootprint::getGridItems).sum()).register(registry);
+	this.sessionBytes = DistributionSummary.builder("vsapp.memory.session.estimated").baseUnit("bytes").register(registry);
+	this.pressureEvents = registry.counter("vsapp.memory.pressure");
+	this.evictedUis = registry.counter("vsapp.memory.evicted.uis");
+	scheduler.scheduleWithFixedDelay(this::sample, sampleSeconds, sampleSeconds, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public void serviceInit(ServiceInitEvent event) {
+	event.getSource().addSessionInitListener(sessionEvent -> track(sessionEvent.getSession()));
+	event.getSource().addSessionDestroyListener(sessionEvent -> sessions.remove(sessionEvent.getSession()));
+  }
+
+  void track(VaadinSession session) {
+	sessions.put(session, SessionFootprint.EMPTY);
+  }
+
+  List<SessionFootprint> footprints() {
+	return new ArrayList<>(sessions.values());
+  }
+
+  long totalEstimatedBytes() {
+	return sessions.values().stream().mapToLong(SessionFootprint::getEstimatedBytes).sum();
+  }
+
+  int getHeapBudgetPercent() {
+	return heapBudgetPercent;
+  }
+
+  MemoryUsage heapUsage() {
+	return memory.getHeapMemoryUsage();
+  }
+
+  // caller must hold the session lock
+  static SessionFootprint measure(VaadinSession session) {
+	List<UiFootprint> uis = new ArrayList<>();
+	for (UI ui : session.getUIs()) {
+	  UiFootprint footprint = new UiFootprint(ui.getUIId(), ui.getInternals().getActiveViewLocation().getPath());
+	  ui.getInternals().getStateTree().getRootNode().visitNodeTree(node -> footprint.addStateNode());
+	  report(ui, footprint);
+	  uis.add(footprint);
+	}
+	return new SessionFootprint(userOf(session), uis, LocalDateTime.now());
+  }
+
+  void sample() {
+	try {
+	  sessions.keySet().forEach(session -> session.access(() -> {
+		if (sessions.containsKey(session)) {
+		  SessionFootprint footprint = measure(session);
+		  sessions.put(session, footprint);
+		  sessionBytes.record(footprint.getEstimatedBytes());
+		}
+	  }));
+	  if (overBudget()) {
+		relievePressure();
+	  }
+	} catch (RuntimeException e) {
+	  log.log(Level.WARNING, "Session memory sampling failed", e);
+	}
+  }
+
+  boolean overBudget() {
+	MemoryUsage heap = heapUsage();
+	return heap.getMax() > 0 && heap.getUsed() * 100 >= heap.getMax() * heapBudgetPercent;
+  }
+
+  void relievePressure() {
+	pressureEvents.increment();
+	pressureListeners.orderedStream().forEach(MemoryPressureListener::onMemoryPressure);
+	long now = System.currentTimeMillis();
+	sessions.keySet().forEach(session -> session.access(() -> {
+	  for (UI ui : new ArrayList<>(session.getUIs())) {
+		if (ui.isClosing() || now - ui.getInternals().getLastHeartbeatTimestamp() > staleUiMillis) {
+		  session.removeUI(ui);
+		  evictedUis.increment();
+		}
+	  }
+	}));
+	log.warning(String.format("Heap above %d%% budget, caches shrunk and stale UIs evicted", heapBudgetPercent));
+  }
+
+  @PreDestroy
+  void shutdown() {
+	scheduler.shutdownNow();
+  }
+
+  private static void report(Component component, UiFootprint footprint) {
+	if (component instanceof FootprintReporter) {
+	  ((FootprintReporter) component).reportFootprint(footprint);
+	}
+	component.getChildren().forEach(child -> report(child, footprint));
+  }
+
+  private static String userOf(VaadinSession session) {
+	WrappedSession wrapped = session.getSession();
+	Object context = wrapped == null ? null : wrapped.getAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY);
+	if (context instanceof SecurityContext && ((SecurityContext) context).getAuthentication() != null) {
+	  return ((SecurityContext) context).getAuthentication().getName();
+	}
+	return "-";
+  }
+}
+
+/*
+ * Live Vaadin sessions and UIs on this node, and rows the grids load per data provider call.
+ */
+@org.springframework.stereotype.Component
+class VaadinMetrics implements VaadinServiceInitListener, MeterBinder {
+  private final AtomicInteger sessions = new AtomicInteger();
+  private final AtomicInteger uis = new AtomicInteger();
+  // null until the registry binds this, loads before that are not recorded
+  private volatile DistributionSummary contactGridItems;
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+	Gauge.builder("vsapp.vaadin.sessions", sessions, AtomicInteger::get).register(registry);
+	Gauge.builder("vsapp.vaadin.uis", uis, AtomicInteger::get).register(registry);
+	contactGridItems = DistributionSummary.builder("vsapp.grid.items").tag("grid", "contacts").register(registry);
+  }
+
+  void recordContactGridItems(int items) {
+	DistributionSummary summary = contactGridItems;
+	if (summary != null) {
+	  summary.record(items);
+	}
+  }
+
+  @Override
+  public void serviceInit(ServiceInitEvent event) {
+	event.getSource().addSessionInitListener(sessionEvent -> sessions.incrementAndGet());
+	event.getSource().addSessionDestroyListener(sessionEvent -> sessions.decrementAndGet());
+	event.getSource().addUIInitListener(uiEvent -> {
+	  uis.incrementAndGet();
+	  uiEvent.getUI().addDetachListener(detachEvent -> uis.decrementAndGet());
+	});
+  }
+}
+
+/*
+ * Round trip latency of Vaadin requests, tagged by request type (uidl, heartbeat, init..., other for unknown values).
+ */
+@org.springframework.stereotype.Component
+class VaadinRequestMetricsFilter extends OncePerRequestFilter {
+  private final MeterRegistry registry;
+
+  public VaadinRequestMetricsFilter(MeterRegistry registry) {
+	this.registry = registry;
+  }
+
+  @Override
+  protected boolean shouldNotFilter(HttpServletRequest request) {
+	return request.getParameter(ApplicationConstants.REQUEST_TYPE_PARAMETER) == null;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+		throws ServletException, IOException {
+	Timer.Sample sample = Timer.start(registry);
+	try {
+	  chain.doFilter(request, response);
+	} finally {
+	  sample.stop(registry.timer("vsapp.vaadin.requests",
+			"type", requestType(request.getParameter(ApplicationConstants.REQUEST_TYPE_PARAMETER)),
+			"status", String.valueOf(response.getStatus())));
+	}
+  }
+
+  // the parameter is sent by the client, anything but a known request type shares one tag value
+  static String requestType(String parameter) {
+	return Stream.of(ServletHelper.RequestType.values())
+		  .map(ServletHelper.RequestType::getIdentifier)
+		  .filter(identifier -> identifier.equals(parameter))
+		  .findFirst()
+		  .orElse("other");
+  }
+}
+
+/*
+ * Latency of ContactService/CompanyService calls and repository queries, plus rows returned by queries.
+ * Percentiles and histograms come from the management.metrics.distribution.* properties.
+ */
+@Aspect
+@org.springframework.stereotype.Component
+class ServiceMetricsAspect {
+  // resolved lazily, the registry binds MeterBinder beans that this aspect itself proxies
+  private final ObjectProvider<MeterRegistry> registryProvider;
+
+  public ServiceMetricsAspect(ObjectProvider<MeterRegistry> registryProvider) {
+	this.registryProvider = registryProvider;
+  }
+
+  @Around("execution(public * com.full_webapp.vsapp.ContactService.*(..)) " +
+		"|| execution(public * com.full_webapp.vsapp.CompanyService.*(..))")
+  public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+	return time(joinPoint, "vsapp.service", joinPoint.getSignature().getDeclaringType().getSimpleName());
+  }
+
+  @Around("execution(* org.springframework.data.repository.Repository+.*(..)) && bean(*Repository)")
+  public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+	String repository = Arrays.stream(joinPoint.getThis().getClass().getInterfaces())
+		  .filter(type -> type.getPackage() == ContactRepository.class.getPackage())
+		  .map(Class::getSimpleName)
+		  .findFirst()
+		  .orElse("unknown");
+	Object result = time(joinPoint, "vsapp.repository", repository);
+	Integer rows = rows(result);
+	if (rows != null) {
+	  registryProvider.getObject().summary("vsapp.repository.rows", "class", repository, "method", joinPoint.getSignature().getName())
+			.record(rows);
+	}
+	return result;
+  }
+
+  private Object time(ProceedingJoinPoint joinPoint, String name, String type) throws Throwable {
+	MeterRegistry registry = registryProvider.getObject();
+	Timer.Sample sample = Timer.start(registry);
+	String exception = "none";
+	try {
+	  return joinPoint.proceed();
+	} catch (Throwable e) {
+	  exception = e.getClass().getSimpleName();
+	  throw e;
+	} finally {
+	  sample.stop(registry.timer(name, "class", type, "method", joinPoint.getSignature().getName(), "exception", exception));
+	}
+  }
+
+  private static Integer rows(Object result) {
+	if (result instanceof Collection) {
+	  return ((Collection<?>) result).size();
+	} else if (result instanceof Slice) {
+	  return ((Slice<?>) result).getNumberOfElements();
+	} else if (result instanceof Optional) {
+	  return ((Optional<?>) result).isPresent() ? 1 : 0;
+	}
+	return null;
+  }
+}
+
+/*
+ * 	Model
+ */
+@MappedSuperclass
+@EntityListeners(ChangeVersionListener.class)
+abstract class AbstractEntity {
+  @Id
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "entity_seq")
+  @SequenceGenerator(name = "entity_seq", sequenceName = "hibernate_sequence", allocationSize = 50)
+  private Long id;
+
+  // change version of the last transaction that wrote the row, see ChangeVersions; not an optimistic lock
+  private Long version;
+
+  public Long getId() {
+	return id;
+  }
+
+  public Long getVersion() {
+	return version;
+  }
+
+  void setVersion(Long version) {
+	this.version = version;
+  }
+
+  public boolean isPersisted() {
+	return id != null;
+  }
+
+  @Override
+  public int hashCode() {
+	if (getId() != null) {
+	  return getId().hashCode();
+	}
+	return super.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+	if (this == obj) {
+	  return true;
+	}
+	if (obj == null) {
+	  return false;
+	}
+	if (getClass() != obj.getClass()) {
+	  return false;
+	}
+	AbstractEntity other = (AbstractEntity) obj;
+	if (getId() == null || other.getId() == null) {
+	  return false;
+	}
+	return getId().equals(other.getId());
+  }
+}
+
+/*
+ * Stamps inserts and updates with the change version of their transaction, created through Spring by Hibernate.
+ * ChangeVersions is looked up on the first write: with a background bootstrap (fast-start) the session factory
+ * is built on another thread while the context is still creating beans, resolving it then deadlocks.
+ */
+class ChangeVersionListener {
+  private final ObjectProvider<ChangeVersions> changeVersionsProvider;
+  private volatile ChangeVersions changeVersions;
+
+  ChangeVersionListener(ObjectProvider<ChangeVersions> changeVersionsProvider) {
+	this.changeVersionsProvider = changeVersionsProvider;
+  }
+
+  @PrePersist
+  @PreUpdate
+  void stamp(AbstractEntity entity) {
+	if (changeVersions == null) {
+	  changeVersions = changeVersionsProvider.getObject();
+	}
+	entity.setVersion(changeVersions.current());
+  }
+}
+
+@Entity
+@Cacheable
+@org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = SecondLevelCacheConfiguration.CONTACT_REGION)
+@Table(indexes = {
+	  @Index(name = "contact_first_name_id", columnList = "firstName, id"),
+	  @Index(name = "contact_last_name_id", columnList = "lastName, id"),
+	  @Index(name = "contact_email_id", columnList = "email, id"),
+	  @Index(name = "contact_status_id", columnList = "status, id"),
+	  @Index(name = "contact_version", columnList = "version")})
+class Contact extends AbstractEntity implements Cloneable {
+
+  public enum Status {
+	ImportedLead, NotContacted, Contacted, Customer, ClosedLost
+  }
+
+  //  @NotNull
+//  @NotEmpty
+  private String firstName = "";
+
+  //  @NotNull
+//  @NotEmpty
+  private String lastName = "";
+
+  @ManyToOne
+  @JoinColumn(name = "company_id")
+  private Company company;
+
+  @Enumerated(EnumType.STRING)
+//  @NotNull
+  private Contact.Status status;
+
+  //  @Email
+//  @NotNull
+//  @NotEmpty
+  private String email = "";
+
+  // status and company as last read from or written to the database, what a save moves the aggregates away from
+  @Transient
+  private boolean loaded;
+  @Transient
+  private Contact.Status persistedStatus;
+  @Transient
+  private Long persistedCompanyId;
+
+  @PostLoad
+  void rememberPersistedState() {
+	loaded = true;
+	persistedStatus = status;
+	persistedCompanyId = getCompanyId();
+  }
+
+  boolean isLoaded() {
+	return loaded;
+  }
+
+  Contact.Status getPersistedStatus() {
+	return loaded ? persistedStatus : status;
+  }
+
+  Long getPersistedCompanyId() {
+	return loaded ? persistedCompanyId : getCompanyId();
+  }
+
+  Long getCompanyId() {
+	return company == null ? null : company.getId();
+  }
+
+  // same id, version and persisted state, the company is shared
+  Contact copy() {
+	try {
+	  return (Contact) clone();
+	} catch (CloneNotSupportedException e) {
+	  throw new IllegalStateException(e);
+	}
+  }
+
+  public String getEmail() {
+	return email;
+  }
+
+  public void setEmail(String email) {
+	this.email = email;
+  }
+
+  public Status getStatus() {
+	return status;
+  }
+
+  public void setStatus(Status status) {
+	this.status = status;
+  }
+
+  public String getLastName() {
+	return lastName;
+  }
+
+  public void setLastName(String lastName) {
+	this.lastName = lastName;
+  }
+
+  public String getFirstName() {
+	return firstName;
+  }
+
+  public void setFirstName(String firstName) {
+	this.firstName = firstName;
+  }
+
+  public void setCompany(Company company) {
+	this.company = company;
+  }
+
+  public Company getCompany() {
+	return company;
+  }
+
+  @Override
+  public String toString() {
+	return firstName + " " + lastName;
+  }
+
+}
+
+/*
+ * Immutable contact row for the grid, exports and push updates, filled by constructor expressions.
+ * Holds no managed entity or company graph, the editor loads the full Contact on demand.
+ */
+final class ContactRow implements Serializable {
+  private final Long id;
+  private final String firstName;
+  private final String lastName;
+  private final String email;
+  private final Contact.Status status;
+  private final String companyName;
+
+  public ContactRow(Long id, String firstName, String lastName, String email, Contact.Status status, String companyName) {
+	this.id = id;
+	this.firstName = firstName;
+	this.lastName = lastName;
+	this.email = email;
+	this.status = status;
+	this.companyName = companyName;
+  }
+
+  static ContactRow of(Contact contact) {
+	return new ContactRow(contact.getId(), contact.getFirstName(), contact.getLastName(), contact.getEmail(),
+		  contact.getStatus(), contact.getCompany() == null ? null : contact.getCompany().getName());
+  }
+
+  public Long getId() {
+	return id;
+  }
+
+  public String getFirstName() {
+	return firstName;
+  }
+
+  public String getLastName() {
+	return lastName;
+  }
+
+  public String getEmail() {
+	return email;
+  }
+
+  public Contact.Status getStatus() {
+	return status;
+  }
+
+  public String getCompanyName() {
+	return companyName;
+  }
+
+  // grid identity, a refreshed row replaces the one with the same id
+  @Override
+  public boolean equals(Object obj) {
+	return obj instanceof ContactRow && Objects.equals(id, ((ContactRow) obj).id);
+  }
+
+  @Override
+  public int hashCode() {
+	return Objects.hashCode(id);
+  }
+
+  @Override
+  public String toString() {
+	return firstName + " " + lastName;
+  }
+}
+
+@Entity
+@Cacheable
+@org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = SecondLevelCacheConfiguration.COMPANY_REGION)
+class Company extends AbstractEntity {
+  private String name;
+
+  @OneToMany(mappedBy = "company", fetch = FetchType.LAZY)
+  private final List<Contact> employees = new ArrayList<>();
+
+  public Company() {
+  }
+
+  public Company(String name) {
+	setName(name);
+  }
+
+  public String getName() {
+	return name;
+  }
+
+  public void setName(String name) {
+	this.name = name;
+  }
+
+  public List<Contact> getEmployees() {
+	return employees;
+  }
+}
+
+/*
+ * Deleted contact for delta sync clients, stamped with the change version of the deleting transaction.
+ * Ids come from a sequence of their own, change_version_seq only hands out versions.
+ */
+@Entity
+@Table(name = "contact_tombstone", indexes = @Index(name = "contact_tombstone_version", columnList = "version"))
+class ContactTombstone {
+  @Id
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "contact_tombstone")
+  @SequenceGenerator(name = "contact_tombstone", sequenceName = "contact_tombstone_seq", allocationSize = 50)
+  private Long id;
+
+  private Long version;
+
+  private Long contactId;
+
+  protected ContactTombstone() {
+  }
+
+  ContactTombstone(Long contactId, Long version) {
+	this.contactId = contactId;
+	this.version = version;
+  }
+
+  public Long getId() {
+	return id;
+  }
+
+  public Long getVersion() {
+	return version;
+  }
+
+  public Long getContactId() {
+	return contactId;
+  }
+}
+
+@Entity
+@Table(name = "user_account")
+class UserAccount extends AbstractEntity {
+  @Column(unique = true, nullable = false)
+  private String username;
+
+  @Column(nullable = false)
+  private String passwordHash;
+
+  private String role;
+
+  private boolean enabled = true;
+
+  public UserAccount() {
+  }
+
+  public UserAccount(String username, String passwordHash, String role) {
+	this.username = username;
+	this.passwordHash = passwordHash;
+	this.role = role;
+  }
+
+  public String getUsername() {
+	return username;
+  }
+
+  public void setUsername(String username) {
+	this.username = username;
+  }
+
+  public String getPasswordHash() {
+	return passwordHash;
+  }
+
+  public void setPasswordHash(String passwordHash) {
+	this.passwordHash = passwordHash;
+  }
+
+  public String getRole() {
+	return role;
+  }
+
+  public void setRole(String role) {
+	this.role = role;
+  }
+
+  public boolean isEnabled() {
+	return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+	this.enabled = enabled;
+  }
+}
+
+/*
+ * 	Service
+ */
+@Service
+class GreetService {
+  public String greet(String name) {
+	if (name == null || name.isEmpty()) {
+	  return "Hello anonymous user";
+	} else {
+	  return "Hello " + name;
+	}
+  }
+}
+
+@Service
+class CompanyService {
+
+  private final CompanyRepository companyRepository;
+  private final CompanyCache companyCache;
+
+  public CompanyService(CompanyRepository companyRepository, CompanyCache companyCache) {
+	this.companyRepository = companyRepository;
+	this.companyCache = companyCache;
+  }
+
+  @Transactional(readOnly = true)
+  public List<Company> findAll() {
+	return companyCache.findAll();
+  }
+
+  @Transactional(readOnly = true)
+  public Optional<Company> findById(Long id) {
+	return companyCache.findById(id);
+  }
+
+  public Company save(Company company) {
+	try {
+	  return companyRepository.save(company);
+	} finally {
+	  companyCache.invalidate();
+	}
+  }
+
+  public void delete(Company company) {
+	try {
+	  companyRepository.delete(company);
+	} finally {
+	  companyCache.invalidate();
+	}
+  }
+
+  public CacheStats getCacheStats() {
+	return companyCache.stats();
+  }
+
+  @Transactional(readOnly = true)
+  public Map<String, Integer> getStats() {
+	HashMap<String, Integer> stats = new HashMap<>();
+	companyRepository.countEmployeesByCompany().forEach(row ->
+		  stats.put((String) row[0], ((Long) row[1]).intValue()));
+	return stats;
+  }
+}
+
+/*
+ * Application wide company cache, shared by every UI. Companies rarely change, so entries live
+ * until the TTL passes or a company write through CompanyService invalidates them.
+ */
+@org.springframework.stereotype.Component
+class CompanyCache implements MeterBinder, MemoryPressureListener {
+  private static final String ALL = "all";
+
+  private final LoadingCache<String, List<Company>> all;
+  private final LoadingCache<Long, Optional<Company>> byId;
+
+  public CompanyCache(CompanyRepository companyRepository,
+					  @Value("${custom.value.cache.company.ttl-seconds:600}") long ttlSeconds,
+					  @Value("${custom.value.cache.company.max-size:10000}") long maxSize) {
+	this.all = Caffeine.newBuilder()
+		  .maximumSize(1)
+		  .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+		  .recordStats()
+		  .build(key -> Collections.unmodifiableList(companyRepository.findAll()));
+	this.byId = Caffeine.newBuilder()
+		  .maximumSize(maxSize)
+		  .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+		  .recordStats()
+		  .build(companyRepository::findById);
+  }
+
+  List<Company> findAll() {
+	return all.get(ALL);
+  }
+
+  Optional<Company> findById(Long id) {
+	return id == null ? Optional.empty() : byId.get(id);
+  }
+
+  void invalidate() {
+	all.invalidateAll();
+	byId.invalidateAll();
+  }
+
+  CacheStats stats() {
+	return all.stats().plus(byId.stats());
+  }
+
+  @Override
+  public void onMemoryPressure() {
+	invalidate();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+	CaffeineCacheMetrics.monitor(registry, all, "companies");
+	CaffeineCacheMetrics.monitor(registry, byId, "company-by-id");
+  }
+}
+
+/*
+ * Contacts per status and per company for the dashboard. Counted once with grouped queries when the
+ * application is ready, then moved by every contact write through LongAdders, so reading the counts
+ * costs O(statuses + companies) however many contacts there are.
+ */
+@Log
+@org.springframework.stereotype.Component
+class ContactAggregates {
+  private final ContactRepository contactRepository;
+  private final Map<Contact.Status, LongAdder> byStatus = new EnumMap<>(Contact.Status.class);
+  private final LongAdder withoutStatus = new LongAdder();
+  private final ConcurrentMap<Long, LongAdder> byCompany = new ConcurrentHashMap<>();
+  private final LongAdder withoutCompany = new LongAdder();
+
+  public ContactAggregates(ContactRepository contactRepository) {
+	this.contactRepository = contactRepository;
+	for (Contact.Status status : Contact.Status.values()) {
+	  byStatus.put(status, new LongAdder());
+	}
+  }
+
+  // ahead of ContactSeeder; a write racing with this load can be counted twice or missed
+  @Order(Ordered.HIGHEST_PRECEDENCE)
+  @EventListener(ApplicationReadyEvent.class)
+  public void load() {
+	long start = System.nanoTime();
+	byStatus.values().forEach(LongAdder::reset);
+	withoutStatus.reset();
+	byCompany.clear();
+	withoutCompany.reset();
+	contactRepository.countByStatus().forEach(row -> status((Contact.Status) row[0]).add((Long) row[1]));
+	contactRepository.countByCompany().forEach(row -> company((Long) row[0]).add((Long) row[1]));
+	log.info(String.format("Contact aggregates loaded: %d contacts, %d companies in %d ms",
+		  total(), byCompany.size(), (System.nanoTime() - start) / 1_000_000));
+  }
+
+  void added(Contact.Status status, Long companyId) {
+	status(status).increment();
+	company(companyId).increment();
+  }
+
+  void removed(Contact.Status status, Long companyId) {
+	status(status).decrement();
+	company(companyId).decrement();
+  }
+
+  void moved(Contact.Status fromStatus, Long fromCompanyId, Contact.Status toStatus, Long toCompanyId) {
+	if (fromStatus != toStatus) {
+	  status(fromStatus).decrement();
+	  status(toStatus).increment();
+	}
+	if (!Objects.equals(fromCompanyId, toCompanyId)) {
+	  company(fromCompanyId).decrement();
+	  company(toCompanyId).increment();
+	}
+  }
+
+  long count(Contact.Status status) {
+	return status(status).sum();
+  }
+
+  long countForCompany(Long companyId) {
+	LongAdder count = companyId == null ? withoutCompany : byCompany.get(companyId);
+	return count == null ? 0 : count.sum();
+  }
+
+  long total() {
+	return withoutStatus.sum() + byStatus.values().stream().mapToLong(LongAdder::sum).sum();
+  }
+
+  private LongAdder status(Contact.Status status) {
+	return status == null ? withoutStatus : byStatus.get(status);
+  }
+
+  private LongAdder company(Long companyId) {
+	return companyId == null ? withoutCompany : byCompany.computeIfAbsent(companyId, id -> new LongAdder());
+  }
+}
+
+@Log
+@Service
+class ContactService {
+  private static final Logger LOGGER = Logger.getLogger(ContactService.class.getName());
+  private final ContactRepository contactRepository;
+  private final ContactSearchIndex searchIndex;
+  private final ContactSearchCache searchCache;
+  private final ContactAggregates aggregates;
+  private final ContactBroadcaster broadcaster;
+  private final ContactTombstoneRepository tombstoneRepository;
+  private final ChangeVersions changeVersions;
+  private final TransactionTemplate transactionTemplate;
+
+  public ContactService(ContactRepository contactRepository,
+						ContactTombstoneRepository tombstoneRepository,
+						ChangeVersions changeVersions,
+						ContactSearchIndex searchIndex,
+						ContactSearchCache searchCache,
+						ContactAggregates aggregates,
+						ContactBroadcaster broadcaster,
+						PlatformTransactionManager transactionManager) {
+	this.contactRepository = contactRepository;
+	this.tombstoneRepository = tombstoneRepository;
+	this.changeVersions = changeVersions;
+	this.searchIndex = searchIndex;
+	this.searchCache = searchCache;
+	this.aggregates = aggregates;
+	this.broadcaster = broadcaster;
+	this.transactionTemplate = new TransactionTemplate(transactionManager);
+  }
+
+  @Transactional(readOnly = true)
+  public List<Contact> findAll() {
+	return contactRepository.findAll();
+  }
+
+  @Transactional(readOnly = true)
+  public List<Contact> findAll(String filterText) {
+	if (filterText == null || filterText.isEmpty()) {
+	  return contactRepository.findAll();
+	}
+	Optional<Set<Long>> ids = searchCache.search(filterText);
+	if (ids.isPresent() && ids.get().size() <= ContactSearchIndex.MAX_ID_LOOKUP) {
+	  return ids.get().isEmpty() ? Collections.emptyList() : contactRepository.findAllById(ids.get());
+	} else {
+	  return contactRepository.search(filterText);
+	}
+  }
+
+  @Transactional(readOnly = true)
+  public long count() {
+	return contactRepository.count();
+  }
+
+  /*
+   * Window of contacts for lazy loading, id is always appended to the sort so paging stays stable.
+   * It runs in the direction of the sort like the keyset tiebreaker, jumps and scrolls then see one order.
+   */
+  @Transactional(readOnly = true)
+  public List<ContactRow> fetch(String filterText, int offset, int limit, Sort sort) {
+	Pageable pageable = new OffsetPageRequest(offset, limit, withNullPrecedence(sort).and(Sort.by(
+		  sort.stream().findFirst().map(Sort.Order::getDirection).orElse(Sort.Direction.ASC), "id")));
+	if (filterText == null || filterText.isEmpty()) {
+	  return contactRepository.findRows(pageable);
+	}
+	Optional<Set<Long>> ids = searchCache.search(filterText);
+	if (ids.isPresent() && ids.get().size() <= ContactSearchIndex.MAX_ID_LOOKUP) {
+	  return ids.get().isEmpty() ? Collections.emptyList() : contactRepository.findRowsByIdIn(ids.get(), pageable);
+	} else {
+	  return contactRepository.searchRows(filterText, pageable);
+	}
+  }
+
+  /*
+   * Spring Data JPA drops the null handling of a sort from JPQL, so the database default would decide
+   * and H2 puts nulls first. Ordering by an is-null flag ahead of the column keeps offset windows in
+   * the order the keyset queries read.
+   */
+  static Sort withNullPrecedence(Sort sort) {
+	Sort ordered = Sort.unsorted();
+	for (Sort.Order order : sort) {
+	  if (order.getNullHandling() != Sort.NullHandling.NATIVE && KeysetCursor.PROPERTIES.contains(order.getProperty())) {
+		ordered = ordered.and(JpaSort.unsafe(
+			  order.getNullHandling() == Sort.NullHandling.NULLS_LAST ? Sort.Direction.ASC : Sort.Direction.DESC,
+			  "(case when c." + order.getProperty() + " is null then 1 else 0 end)"));
+	  }
+	  ordered = ordered.and(Sort.by(order));
+	}
+	return ordered;
+  }
+
+  // full entity for the editor, lists only ever hold rows
+  @Transactional(readOnly = true)
+  public Optional<Contact> findById(Long id) {
+	return contactRepository.findById(id);
+  }
+
+  /*
+   * Keyset page of contacts, the cost doesn't grow with the position in the listing the way offset paging does.
+   */
+  @Transactional(readOnly = true)
+  public KeysetPage seek(String filterText, KeysetCursor cursor, int limit) {
+	List<ContactRow> rows;
+	if (filterText == null || filterText.isEmpty()) {
+	  rows = contactRepository.seek(cursor, limit + 1);
+	} else {
+	  Optional<Set<Long>> ids = searchCache.search(filterText);
+	  if (ids.isPresent() && ids.get().size() <= ContactSearchIndex.MAX_ID_LOOKUP) {
+		rows = ids.get().isEmpty() ? Collections.emptyList() : contactRepository.seekIn(cursor, ids.get(), limit + 1);
+	  } else {
+		rows = contactRepository.seekSearch(cursor, filterText, limit + 1);
+	  }
+	}
+	return KeysetPage.of(cursor, rows, limit);
+  }
+
+  @Transactional(readOnly = true)
+  public int count(String filterText) {
+	if (filterText == null || filterText.isEmpty()) {
+	  return (int) contactRepository.count();
+	}
+	Optional<Set<Long>> ids = searchCache.search(filterText);
+	return ids.map(Set::size).orElseGet(() -> (int) contactRepository.countSearch(filterText));
+  }
+
+  /*
+   * Forward-only export: rows come from a fetch-size bounded cursor as projections the persistence
+   * context never tracks, so heap use doesn't depend on the number of exported contacts.
+   */
+  @Transactional(readOnly = true)
+  public void export(String filterText, ExportFormat format, OutputStream out) throws IOException {
+	try (Stream<ContactRow> rows = filterText == null || filterText.isEmpty()
+		  ? contactRepository.streamRows()
+		  : contactRepository.streamRowSearch(filterText);
+		 ContactExportWriter writer = format.open(out)) {
+	  Iterator<ContactRow> iterator = rows.iterator();
+	  while (iterator.hasNext()) {
+		writer.write(iterator.next());
+	  }
+	}
+  }
+
+  /*
+   * The tombstone commits with the delete, delta sync clients learn about it from there. The aggregates
+   * move by the row as it was loaded in the deleting transaction, a stale or repeated delete leaves them alone.
+   */
+  public void delete(Contact contact) {
+	Optional<Contact> deleted;
+	try {
+	  deleted = transactionTemplate.execute(status -> {
+		Optional<Contact> stored = contact.isPersisted() ? contactRepository.findById(contact.getId()) : Optional.empty();
+		stored.ifPresent(row -> {
+		  contactRepository.delete(row);
+		  // the row count is checked here, a concurrent delete of the same row fails the flush
+		  contactRepository.flush();
+		  tombstoneRepository.save(new ContactTombstone(row.getId(), changeVersions.current()));
+		});
+		return stored;
+	  });
+	} catch (ObjectOptimisticLockingFailureException e) {
+	  deleted = Optional.empty();
+	}
+	if (!deleted.isPresent()) {
+	  return;
+	}
+	searchIndex.remove(contact.getId());
+	aggregates.removed(deleted.get().getPersistedStatus(), deleted.get().getPersistedCompanyId());
+	broadcaster.publish(ContactChange.Type.DELETED, contact);
+  }
+
+  public Contact save(Contact contact) {
+	if (contact == null) {
+	  LOGGER.log(Level.SEVERE,
+			"Contact is null. Are you sure you have connected your form to the application?");
+	  return null;
+	}
+	boolean created = !contact.isPersisted();
+	return afterSave(contact, contactRepository.save(contact), created);
+  }
+
+  /*
+   * Contacts written in one transaction, the aggregates, search index and subscribers only see them
+   * once it committed. Saved contacts are returned in the order given.
+   */
+  public List<Contact> saveAll(List<Contact> contacts) {
+	List<Boolean> created = contacts.stream().map(contact -> !contact.isPersisted()).collect(Collectors.toList());
+	List<Contact> saved = transactionTemplate.execute(status ->
+		  contacts.stream().map(contactRepository::save).collect(Collectors.toList()));
+	for (int i = 0; i < saved.size(); i++) {
+	  afterSave(contacts.get(i), saved.get(i), created.get(i));
+	}
+	return saved;
+  }
+
+  private Contact afterSave(Contact contact, Contact saved, boolean created) {
+	// merge loads the stored contact before copying the edits over it, so saved knows the previous state
+	if (saved.isLoaded()) {
+	  aggregates.moved(saved.getPersistedStatus(), saved.getPersistedCompanyId(), saved.getStatus(), saved.getCompanyId());
+	} else {
+	  aggregates.added(saved.getStatus(), saved.getCompanyId());
+	}
+	saved.rememberPersistedState();
+	contact.rememberPersistedState();
+	searchIndex.update(saved);
+	broadcaster.publish(created ? ContactChange.Type.CREATED : ContactChange.Type.UPDATED, saved);
+	return saved;
+  }
+}
+
+/*
+ * Optional write-behind for saves from the editor. A save is queued and its future completes once the
+ * transaction that wrote it committed, or fails with the cause. Saving a contact that is still queued
+ * replaces the queued state and shares its acknowledgement. One worker writes the queue in batches of
+ * batch-size, each in one transaction, after lingering flush-millis so that bursts coalesce. A full
+ * queue blocks the caller for up to offer-timeout-millis and then rejects the save. Queued saves are
+ * lost if the process dies, a regular shutdown drains them. Disabled, submit saves on the calling thread.
+ * The queue holds its own copy of each contact and hands out copies, edits never reach a queued save.
+ */
+@Log
+@org.springframework.stereotype.Component
+class ContactWriteBehind implements MeterBinder {
+  private final ContactService contactService;
+  private final boolean enabled;
+  private final int maxPending;
+  private final int batchSize;
+  private final long flushNanos;
+  private final long offerTimeoutNanos;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition queued = lock.newCondition();
+  private final Condition drained = lock.newCondition();
+  // in flush order; persisted contacts keyed by id, new ones by their entry
+  private final Map<Object, Pending> pending = new LinkedHashMap<>();
+  // queued or being written, what the editor opens instead of the stale stored row
+  private final Map<Long, Contact> unflushed = new ConcurrentHashMap<>();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final Thread worker;
+  private volatile boolean running = true;
+
+  public ContactWriteBehind(ContactService contactService,
+							@Value("${custom.value.write-behind.enabled:false}") boolean enabled,
+							@Value("${custom.value.write-behind.max-pending:1000}") int maxPending,
+							@Value("${custom.value.write-behind.batch-size:50}") int batchSize,
+							@Value("${custom.value.write-behind.flush-millis:100}") long flushMillis,
+							@Value("${custom.value.write-behind.offer-timeout-millis:200}") long offerTimeoutMillis) {
+	this.contactService = contactService;
+	this.enabled = enabled;
+	this.maxPending = maxPending;
+	this.batchSize = batchSize;
+	this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+	this.offerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(offerTimeoutMillis);
+	this.worker = enabled ? DaemonThreads.of("contact-write-behind").newThread(this::run) : null;
+	if (worker != null) {
+	  worker.start();
+	}
+  }
+
+  CompletableFuture<Contact> submit(Contact contact) {
+	if (!enabled) {
+	  CompletableFuture<Contact> ack = new CompletableFuture<>();
+	  try {
+		ack.complete(contactService.save(contact));
+	  } catch (RuntimeException e) {
+		ack.completeExceptionally(e);
+	  }
+	  return ack;
+	}
+	Contact copy = contact.copy();
+	lock.lock();
+	try {
+	  Pending queuedSave = copy.isPersisted() ? pending.get(copy.getId()) : null;
+	  if (queuedSave != null) {
+		queuedSave.contact = copy;
+		unflushed.put(copy.getId(), copy);
+		coalesced.increment();
+		return queuedSave.ack;
+	  }
+	  long wait = offerTimeoutNanos;
+	  while (running && pending.size() >= maxPending && wait > 0) {
+		wait = drained.awaitNanos(wait);
+	  }
+	  if (!running || pending.size() >= maxPending) {
+		rejected.increment();
+		throw new RejectedExecutionException(running ? "Write-behind queue is full" : "Write-behind is shut down");
+	  }
+	  Pending save = new Pending(copy);
+	  pending.put(copy.isPersisted() ? copy.getId() : save, save);
+	  if (copy.isPersisted()) {
+		unflushed.put(copy.getId(), copy);
+	  }
+	  queued.signal();
+	  return save.ack;
+	} catch (InterruptedException e) {
+	  Thread.currentThread().interrupt();
+	  throw new RejectedExecutionException("Interrupted waiting for the write-behind queue", e);
+	} finally {
+	  lock.unlock();
+	}
+  }
+
+  // a copy of the state a queued save will write, newer than what the database has
+  Optional<Contact> pending(Long id) {
+	return Optional.ofNullable(unflushed.get(id)).map(Contact::copy);
+  }
+
+  int size() {
+	lock.lock();
+	try {
+	  return pending.size();
+	} finally {
+	  lock.unlock();
+	}
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+	Gauge.builder("vsapp.contact.write-behind.pending", this, ContactWriteBehind::size).register(registry);
+	FunctionCounter.builder("vsapp.contact.write-behind.coalesced", coalesced, LongAdder::sum).register(registry);
+	FunctionCounter.builder("vsapp.contact.write-behind.rejected", rejected, LongAdder::sum).register(registry);
+	FunctionCounter.builder("vsapp.contact.write-behind.failed", failed, LongAdder::sum).register(registry);
+  }
+
+  // writes what is queued before the context closes, a transaction in progress is never interrupted
+  @PreDestroy
+  void shutdown() throws InterruptedException {
+	if (worker == null) {
+	  return;
+	}
+	lock.lock();
+	try {
+	  running = false;
+	  queued.signalAll();
+	  drained.signalAll();
+	} finally {
+	  lock.unlock();
+	}
+	worker.join(TimeUnit.SECONDS.toMillis(30));
+	if (worker.isAlive()) {
+	  log.warning("Write-behind queue not drained within 30 seconds, " + size() + " saves lost");
+	}
+  }
+
+  private void run() {
+	try {
+	  List<Pending> batch;
+	  while (!(batch = take()).isEmpty()) {
+		flush(batch);
+	  }
+	} catch (InterruptedException e) {
+	  Thread.currentThread().interrupt();
+	}
+  }
+
+  // waits for a queued save, then lingers for more unless the batch is full; empty once shut down and drained
+  private List<Pending> take() throws InterruptedException {
+	lock.lock();
+	try {
+	  while (running && pending.isEmpty()) {
+		queued.await();
+	  }
+	  long linger = flushNanos;
+	  while (running && pending.size() < batchSize && linger > 0) {
+		linger = queued.awaitNanos(linger);
+	  }
+	  List<Pending> batch = new ArrayList<>(Math.min(pending.size(), batchSize));
+	  Iterator<Pending> saves = pending.values().iterator();
+	  while (saves.hasNext() && batch.size() < batchSize) {
+		batch.add(saves.next());
+		saves.remove();
+	  }
+	  drained.signalAll();
+	  return batch;
+	} finally {
+	  lock.unlock();
+	}
+  }
+
+  private void flush(List<Pending> batch) {
+	List<Contact> contacts = batch.stream().map(save -> save.contact).collect(Collectors.toList());
+	try {
+	  List<Contact> saved = contactService.saveAll(contacts);
+	  for (int i = 0; i < batch.size(); i++) {
+		acknowledge(batch.get(i), saved.get(i), null);
+	  }
+	} catch (RuntimeException e) {
+	  // one bad contact rolls back the whole batch, retried one by one only that one fails
+	  log.log(Level.WARNING, "Write-behind batch of " + batch.size() + " contacts failed, saving them one by one", e);
+	  for (Pending save : batch) {
+		try {
+		  acknowledge(save, contactService.save(save.contact), null);
+		} catch (RuntimeException failure) {
+		  failed.increment();
+		  acknowledge(save, null, failure);
+		}
+	  }
+	}
+  }
+
+  private void acknowledge(Pending save, Contact saved, Throwable failure) {
+	if (save.contact.isPersisted()) {
+	  unflushed.remove(save.contact.getId(), save.contact);
+	}
+	if (failure == null) {
+	  save.ack.complete(saved);
+	} else {
+	  save.ack.completeExceptionally(failure);
+	}
+  }
+
+  private static final class Pending {
+	final CompletableFuture<Contact> ack = new CompletableFuture<>();
+	// replaced while queued, read by the worker after taking it under the lock
+	Contact contact;
+
+	Pending(Contact contact) {
+	  this.contact = contact;
+	}
+  }
+}
+
+/*
+ * In-memory trigram index over first name, last name and email. Resolves contact ids for a filter
+ * without the leading-wildcard like scan; returns empty Optional while disabled or not yet built.
+ */
+@Log
+@org.springframework.stereotype.Component
+class ContactSearchIndex {
+  static final int MAX_ID_LOOKUP = 1000;
+  private static final int GRAM = 3;
+  private static final int BUILD_CHUNK = 5000;
+
+  private final ContactRepository contactRepository;
+  private final boolean enabled;
+  private final boolean backgroundBuild;
+  private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+  private final Map<Long, String> documents = new ConcurrentHashMap<>();
+  private volatile boolean ready;
+  // moves after every change to the indexed documents, results computed under an older value may be stale
+  private volatile long generation;
+
+  public ContactSearchIndex(ContactRepository contactRepository,
+							@Value("${custom.value.search.trigram-index:true}") boolean enabled,
+							@Value("${custom.value.search.background-build:false}") boolean backgroundBuild) {
+	this.contactRepository = contactRepository;
+	this.enabled = enabled;
+	this.backgroundBuild = backgroundBuild;
+  }
+
+  // ahead of other ready listeners such as ContactSeeder, which adds to the built index
+  @Order(Ordered.HIGHEST_PRECEDENCE)
+  @EventListener(ApplicationReadyEvent.class)
+  public void buildOnStartup() {
+	if (backgroundBuild) {
+	  DaemonThreads.of("contact-index").newThread(this::build).start();
+	} else {
+	  build();
+	}
+  }
+
+  public void build() {
+	if (!enabled) {
+	  log.info("Trigram index disabled, contact search uses JPQL");
+	  return;
+	}
+	long start = System.nanoTime();
+	long lastId = Long.MIN_VALUE;
+	List<Object[]> rows;
+	do {
+	  rows = contactRepository.findSearchFieldsAfter(lastId, PageRequest.of(0, BUILD_CHUNK));
+	  for (Object[] row : rows) {
+		lastId = (Long) row[0];
+		indexIfAbsent(lastId, document((String) row[1], (String) row[2], (String) row[3]));
+	  }
+	} while (rows.size() == BUILD_CHUNK);
+	ready = true;
+	generation++;
+	log.info(String.format("Trigram index built: %d contacts, %d grams in %d ms",
+		  documents.size(), postings.size(), (System.nanoTime() - start) / 1_000_000));
+  }
+
+  Optional<Set<Long>> search(String term) {
+	return search(term, null);
+  }
+
+  // within, when given, is known to contain every match, such as the result for a shorter part of the term
+  Optional<Set<Long>> search(String term, Set<Long> within) {
+	if (!ready) {
+	  return Optional.empty();
+	}
+	String needle = normalize(term);
+	Collection<Long> candidates = within;
+	if (needle.length() >= GRAM) {
+	  for (String gram : grams(needle)) {
+		Set<Long> ids = postings.get(gram);
+		if (ids == null) {
+		  return Optional.of(Collections.emptySet());
+		}
+		if (candidates == null || ids.size() < candidates.size()) {
+		  candidates = ids;
+		}
+	  }
+	}
+	if (candidates == null) {
+	  candidates = documents.keySet();
+	}
+	Set<Long> result = new HashSet<>();
+	for (Long id : candidates) {
+	  String document = documents.get(id);
+	  if (document != null && document.contains(needle)) {
+		result.add(id);
+	  }
+	}
+	return Optional.of(result);
+  }
+
+  long generation() {
+	return generation;
+  }
+
+  synchronized void update(Contact contact) {
+	if (!enabled || contact == null || contact.getId() == null) {
+	  return;
+	}
+	replace(contact.getId(), document(contact.getFirstName(), contact.getLastName(), contact.getEmail()));
+  }
+
+  // replaced in place, readers must never see an edited contact missing from the index
+  private synchronized void replace(Long id, String document) {
+	String previous = index(id, document);
+	if (previous != null && !previous.equals(document)) {
+	  Set<String> stale = grams(previous);
+	  stale.removeAll(grams(document));
+	  removeGrams(id, stale);
+	}
+  }
+
+  void add(Long id, String firstName, String lastName, String email) {
+	if (enabled) {
+	  replace(id, document(firstName, lastName, email));
+	}
+  }
+
+  synchronized void remove(Long id) {
+	if (enabled && id != null) {
+	  removeDocument(id);
+	}
+  }
+
+  // while building, a contact saved since its row was read is already indexed with newer fields
+  private synchronized void indexIfAbsent(Long id, String document) {
+	if (!documents.containsKey(id)) {
+	  index(id, document);
+	}
+  }
+
+  private String index(Long id, String document) {
+	String previous = documents.put(id, document);
+	for (String gram : grams(document)) {
+	  postings.computeIfAbsent(gram, g -> ConcurrentHashMap.newKeySet()).add(id);
+	}
+	generation++;
+	return previous;
+  }
+
+  private void removeDocument(Long id) {
+	String previous = documents.remove(id);
+	if (previous != null) {
+	  removeGrams(id, grams(previous));
+	  generation++;
+	}
+  }
+
+  private void removeGrams(Long id, Set<String> grams) {
+	for (String gram : grams) {
+	  Set<Long> ids = postings.get(gram);
+	  if (ids != null) {
+		ids.remove(id);
+		if (ids.isEmpty()) {
+		  postings.remove(gram, ids);
+		}
+	  }
+	}
+  }
+
+  // fields are joined with a separator that never appears in a normalized term, so matches can't span fields
+  private static String document(String firstName, String lastName, String email) {
+	return normalize(firstName) + '\n' + normalize(lastName) + '\n' + normalize(email);
+  }
+
+  static String normalize(String value) {
+	return value == null ? "" : value.toLowerCase(Locale.ROOT);
+  }
+
+  private static Set<String> grams(String value) {
+	Set<String> grams = new HashSet<>();
+	for (int i = 0; i + GRAM <= value.length(); i++) {
+	  String gram = value.substring(i, i + GRAM);
+	  if (gram.indexOf('\n') < 0) {
+		grams.add(gram);
+	  }
+	}
+	return grams;
+  }
+}
+
+/*
+ * Contact ids per normalized search term, shared by every UI. Concurrent searches for a term wait for
+ * one computation instead of each scanning the index, and a term that extends a cached one (typing
+ * "an" after "a") only filters that cached superset. Entries are tied to the index generation, so any
+ * contact write invalidates them; eviction is by the total number of cached ids.
+ */
+@org.springframework.stereotype.Component
+class ContactSearchCache implements MeterBinder, MemoryPressureListener {
+  private final ContactSearchIndex searchIndex;
+  private final Cache<String, Result> results;
+  private final ConcurrentMap<String, CompletableFuture<Optional<Set<Long>>>> inFlight = new ConcurrentHashMap<>();
+  private final LongAdder refined = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+
+  public ContactSearchCache(ContactSearchIndex searchIndex,
+							@Value("${custom.value.search.cache.max-ids:200000}") long maxIds) {
+	this.searchIndex = searchIndex;
+	this.results = Caffeine.newBuilder()
+		  .maximumWeight(maxIds)
+		  .weigher((String term, Result result) -> result.ids.size() + 1)
+		  .recordStats()
+		  .build();
+  }
+
+  // empty while the index can't answer, callers then query the database
+  Optional<Set<Long>> search(String term) {
+	String key = ContactSearchIndex.normalize(term);
+	long generation = searchIndex.generation();
+	Optional<Set<Long>> cached = cached(key, generation);
+	if (cached.isPresent()) {
+	  return cached;
+	}
+	CompletableFuture<Optional<Set<Long>>> search = new CompletableFuture<>();
+	CompletableFuture<Optional<Set<Long>>> running = inFlight.putIfAbsent(key, search);
+	if (running != null) {
+	  coalesced.increment();
+	  return running.join();
+	}
+	try {
+	  Optional<Set<Long>> ids = compute(key, generation).map(Collections::unmodifiableSet);
+	  // a write during the computation may not be part of the result
+	  if (ids.isPresent() && generation == searchIndex.generation()) {
+		results.put(key, new Result(generation, ids.get()));
+	  }
+	  search.complete(ids);
+	  return ids;
+	} catch (RuntimeException e) {
+	  search.completeExceptionally(e);
+	  throw e;
+	} finally {
+	  inFlight.remove(key, search);
+	}
+  }
+
+  private Optional<Set<Long>> compute(String key, long generation) {
+	for (int length = key.length() - 1; length > 0; length--) {
+	  Optional<Set<Long>> superset = cached(key.substring(0, length), generation);
+	  if (superset.isPresent()) {
+		refined.increment();
+		return searchIndex.search(key, superset.get());
+	  }
+	}
+	return searchIndex.search(key);
+  }
+
+  private Optional<Set<Long>> cached(String key, long generation) {
+	Result result = results.getIfPresent(key);
+	if (result == null) {
+	  return Optional.empty();
+	}
+	if (result.generation != generation) {
+	  results.invalidate(key);
+	  return Optional.empty();
+	}
+	return Optional.of(result.ids);
+  }
+
+  void invalidate() {
+	results.invalidateAll();
+  }
+
+  CacheStats stats() {
+	return results.stats();
+  }
+
+  @Override
+  public void onMemoryPressure() {
+	invalidate();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+	CaffeineCacheMetrics.monitor(registry, results, "contact-search");
+	FunctionCounter.builder("vsapp.search.cache.refined", refined, LongAdder::sum).register(registry);
+	FunctionCounter.builder("vsapp.search.cache.coalesced", coalesced, LongAdder::sum).register(registry);
+  }
+
+  private static final class Result {
+	final long generation;
+	final Set<Long> ids;
+
+	Result(long generation, Set<Long> ids) {
+	  this.generation = generation;
+	  this.ids = ids;
+	}
+  }
+}
+
+/*
+ * Streams contacts from CSV (header: firstName,lastName,email,status,company) in constant memory.
+ * Rows are persisted in chunked transactions, flushed as JDBC batches and detached after each chunk.
+ */
+@Log
+@Service
+class ContactImportService {
+  private final ContactSearchIndex searchIndex;
+  private final ContactAggregates aggregates;
+  private final ContactBroadcaster broadcaster;
+  private final CompanyService companyService;
+  private final TransactionTemplate transactionTemplate;
+  private final int chunkSize;
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  public ContactImportService(ContactSearchIndex searchIndex,
+							  ContactAggregates aggregates,
+							  ContactBroadcaster broadcaster,
+							  CompanyService companyService,
+							  PlatformTransactionManager transactionManager,
+							  @Value("${custom.value.import.chunk-size:1000}") int chunkSize) {
+	this.searchIndex = searchIndex;
+	this.aggregates = aggregates;
+	this.broadcaster = broadcaster;
+	this.companyService = companyService;
+	this.transactionTemplate = new TransactionTemplate(transactionManager);
+	this.chunkSize = chunkSize;
+  }
+
+  public ImportResult importCsv(InputStream in, Consumer<ImportResult> progress) throws IOException {
+	long start = System.nanoTime();
+	BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+	String header = reader.readLine();
+	if (header == null) {
+	  return new ImportResult(0, 0, 0);
+	}
+	Map<String, Integer> columns = columns(CsvLine.split(header));
+	Map<String, Company> companies = new HashMap<>();
+	companyService.findAll().forEach(company -> companies.put(key(company.getName()), company));
+
+	List<Contact> chunk = new ArrayList<>(chunkSize);
+	long imported = 0;
+	long failed = 0;
+	String line;
+	while ((line = reader.readLine()) != null) {
+	  if (line.isEmpty()) {
+		continue;
+	  }
+	  try {
+		chunk.add(toContact(CsvLine.split(line), columns, companies));
+	  } catch (IllegalArgumentException e) {
+		failed++;
+		log.fine("Skipping row: " + e.getMessage());
+	  }
+	  if (chunk.size() == chunkSize) {
+		imported += persist(chunk);
+		progress.accept(new ImportResult(imported, failed, elapsedMillis(start)));
+	  }
+	}
+	imported += persist(chunk);
+	ImportResult result = new ImportResult(imported, failed, elapsedMillis(start));
+	progress.accept(result);
+	log.info("Contact import finished: " + result);
+	return result;
+  }
+
+  private int persist(List<Contact> chunk) {
+	if (chunk.isEmpty()) {
+	  return 0;
+	}
+	transactionTemplate.execute(status -> {
+	  chunk.forEach(entityManager::persist);
+	  entityManager.flush();
+	  entityManager.clear();
+	  return null;
+	});
+	for (Contact contact : chunk) {
+	  searchIndex.update(contact);
+	  aggregates.added(contact.getStatus(), contact.getCompanyId());
+	}
+	broadcaster.publishReset();
+	int size = chunk.size();
+	chunk.clear();
+	return size;
+  }
+
+  private Contact toContact(String[] values, Map<String, Integer> columns, Map<String, Company> companies) {
+	Contact contact = new Contact();
+	contact.setFirstName(value(values, columns, "firstname"));
+	contact.setLastName(value(values, columns, "lastname"));
+	contact.setEmail(value(values, columns, "email"));
+	String status = value(values, columns, "status");
+	contact.setStatus(status.isEmpty() ? null : Contact.Status.valueOf(status));
+	String companyName = value(values, columns, "company");
+	if (!companyName.isEmpty()) {
+	  contact.setCompany(companies.computeIfAbsent(key(companyName), k -> companyService.save(new Company(companyName))));
+	}
+	return contact;
+  }
+
+  private static Map<String, Integer> columns(String[] header) {
+	Map<String, Integer> columns = new HashMap<>();
+	for (int i = 0; i < header.length; i++) {
+	  columns.put(key(header[i]), i);
+	}
+	return columns;
+  }
+
+  private static String value(String[] values, Map<String, Integer> columns, String column) {
+	Integer index = columns.get(column);
+	return index == null || index >= values.length ? "" : values[index].trim();
+  }
+
+  private static String key(String name) {
+	return name == null ? "" : name.trim().toLowerCase(Locale.ROOT);
+  }
+
+  private static long elapsedMillis(long start) {
+	return (System.nanoTime() - start) / 1_000_000;
+  }
+
+  static final class ImportResult {
+	private final long imported;
+	private final long failed;
+	private final long elapsedMillis;
+
+	ImportResult(long imported, long failed, long elapsedMillis) {
+	  this.imported = imported;
+	  this.failed = failed;
+	  this.elapsedMillis = elapsedMillis;
+	}
+
+	public long getImported() {
+	  return imported;
+	}
+
+	public long getFailed() {
+	  return failed;
+	}
+
+	public long getElapsedMillis() {
+	  return elapsedMillis;
+	}
+
+	public double getRowsPerSecond() {
+	  return elapsedMillis == 0 ? imported : imported * 1000.0 / elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+	  return String.format("%d imported, %d failed in %d ms (%.0f rows/s)", imported, failed, elapsedMillis, getRowsPerSecond());
+	}
+  }
+}
+
+/*
+ * Synthetic companies and contacts for development and load tests, written as parallel JDBC batches.
+ * Company sizes and names follow a Zipf-like skew; every chunk draws from its own Random derived from
+ * the seed and the chunk number, so a seed produces the same rows whatever the thread count. Ids come
+ * from the entities' sequence generators, so later saves through JPA never collide with seeded rows.
+ * Runs on an empty database once the application is ready, and on demand through the seed endpoint.
+ */
+@Log
+@Service
+class ContactSeeder {
+  private static final String[] FIRST_NAMES = {"Gabrielle", "Brian", "Eduardo", "Koen", "Alejandro", "Angel",
+		"Yahir", "Haiden", "Emily", "Corinne", "Ryann", "Yurem", "Kelly", "Jaydan", "Bernard", "Olivia", "Noah",
+		"Emma", "Liam", "Sofia", "Lucas", "Mia", "Elias", "Ava", "Mateo", "Isla", "Oscar", "Freya", "Hugo",
+		"Alice", "Leo", "Nora", "Axel", "Ella", "William", "Maja", "Jack", "Ida", "Arvid", "Selma"};
+  private static final String[] LAST_NAMES = {"Patel", "Robinson", "Haugen", "Johansen", "Macdonald", "Karlsson",
+		"Gustavsson", "Svensson", "Stewart", "Davis", "Jackson", "Nilsen", "Smith", "Johnson", "Williams", "Brown",
+		"Jones", "Garcia", "Miller", "Wilson", "Andersson", "Larsen", "Hansen", "Pedersen", "Virtanen", "Korhonen",
+		"Nieminen", "Murphy", "Kelly", "Walsh", "Rossi", "Russo", "Martin", "Bernard", "Dubois", "Lopez"};
+  private static final String[] COMPANY_PREFIXES = {"Path-Way", "E-Tech", "Path-E-Tech", "Blue-Sky", "North-Star",
+		"Nova", "Cross-Link", "Bright-Path", "Iron-Gate", "Green-Leaf", "Silver-Line", "Open-Field"};
+  private static final String[] COMPANY_SUFFIXES = {"Electronics", "Management", "Logistics", "Consulting",
+		"Systems", "Software", "Holdings", "Solutions", "Partners", "Industries"};
+  // share of each status in per mille, in Contact.Status order
+  private static final int[] STATUS_WEIGHTS = {300, 250, 250, 150, 50};
+  static final double COMPANY_SKEW = 1.1;
+  private static final double NAME_SKEW = 0.8;
+  private static final String INSERT_COMPANY = "insert into company (id, name, version) values (?, ?, ?)";
+  private static final String INSERT_CONTACT =
+		"insert into contact (id, first_name, last_name, email, status, company_id, version) values (?, ?, ?, ?, ?, ?, ?)";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final SessionFactoryImplementor sessionFactory;
+  private final ContactSearchIndex searchIndex;
+  private final ContactAggregates aggregates;
+  private final ContactBroadcaster broadcaster;
+  private final CompanyCache companyCache;
+  private final ChangeVersions changeVersions;
+  private final boolean onStartup;
+  private final boolean background;
+  private final int companies;
+  private final int contacts;
+  private final long seed;
+  private final int threads;
+  private final int chunkSize;
+
+  public ContactSeeder(JdbcTemplate jdbcTemplate,
+					   PlatformTransactionManager transactionManager,
+					   EntityManagerFactory entityManagerFactory,
+					   ContactSearchIndex searchIndex,
+					   ContactAggregates aggregates,
+					   ContactBroadcaster broadcaster,
+					   CompanyCache companyCache,
+					   ChangeVersions changeVersions,
+					   @Value("${custom.value.seed.on-startup:true}") boolean onStartup,
+					   @Value("${custom.value.seed.background:true}") boolean background,
+					   @Value("${custom.value.seed.companies:20}") int companies,
+					   @Value("${custom.value.seed.contacts:1000}") int contacts,
+					   @Value("${custom.value.seed.seed:0}") long seed,
+					   @Value("${custom.value.seed.threads:0}") int threads,
+					   @Value("${custom.value.seed.chunk-size:5000}") int chunkSize) {
+	this.jdbcTemplate = jdbcTemplate;
+	this.transactionTemplate = new TransactionTemplate(transactionManager);
+	this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+	this.searchIndex = searchIndex;
+	this.aggregates = aggregates;
+	this.broadcaster = broadcaster;
+	this.companyCache = companyCache;
+	this.changeVersions = changeVersions;
+	this.onStartup = onStartup;
+	this.background = background;
+	this.companies = companies;
+	this.contacts = contacts;
+	this.seed = seed;
+	this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	this.chunkSize = chunkSize;
+  }
+
+  // runs after the search index is built, seeded rows are indexed as they are written
+  @EventListener(ApplicationReadyEvent.class)
+  public void seedOnStartup() {
+	if (!onStartup) {
+	  return;
+	}
+	Runnable seeding = () -> {
+	  if (jdbcTemplate.queryForObject("select count(*) from contact", Long.class) == 0) {
+		seed(companies, contacts, seed);
+	  }
+	};
+	if (background) {
+	  DaemonThreads.of("contact-seed").newThread(seeding).start();
+	} else {
+	  seeding.run();
+	}
+  }
+
+  synchronized SeedResult seed(int companyCount, int contactCount, long seed) {
+	long start = System.nanoTime();
+	List<Object[]> companyRows = companies(companyCount, seed);
+	if (!companyRows.isEmpty()) {
+	  transactionTemplate.executeWithoutResult(status -> {
+		long version = changeVersions.current();
+		companyRows.forEach(row -> row[2] = version);
+		jdbcTemplate.batchUpdate(INSERT_COMPANY, companyRows);
+	  });
+	  companyCache.invalidate();
+	}
+	List<Object[]> targets = companyRows.isEmpty()
+		  ? jdbcTemplate.query("select id, name from company order by id", (rs, i) -> new Object[]{rs.getLong(1), rs.getString(2)})
+		  : companyRows;
+
+	ExecutorService pool = Executors.newFixedThreadPool(threads, DaemonThreads.of("contact-seed-writer"));
+	try {
+	  List<Future<?>> writes = new ArrayList<>();
+	  double[] companyWeights = cumulativeWeights(targets.size(), COMPANY_SKEW);
+	  for (int from = 0; from < contactCount; from += chunkSize) {
+		int first = from;
+		int last = Math.min(from + chunkSize, contactCount);
+		writes.add(pool.submit(() -> insertContacts(contacts(seed, first, last, targets, companyWeights))));
+	  }
+	  for (Future<?> write : writes) {
+		write.get();
+	  }
+	} catch (InterruptedException e) {
+	  Thread.currentThread().interrupt();
+	  throw new IllegalStateException("Seeding interrupted", e);
+	} catch (ExecutionException e) {
+	  throw new IllegalStateException("Seeding contacts failed", e.getCause());
+	} finally {
+	  pool.shutdownNow();
+	}
+
+	// rows written past Hibernate, cached search results would not include them
+	sessionFactory.getCache().evictQueryRegions();
+	broadcaster.publishReset();
+	SeedResult result = new SeedResult(companyRows.size(), contactCount, (System.nanoTime() - start) / 1_000_000);
+	log.info("Seeded " + result);
+	return result;
+  }
+
+  private void insertContacts(List<Object[]> rows) {
+	IdentifierGenerator ids = sessionFactory.getMetamodel().entityPersister(Contact.class).getIdentifierGenerator();
+	try (StatelessSession session = sessionFactory.openStatelessSession()) {
+	  for (Object[] row : rows) {
+		row[0] = ids.generate((SharedSessionContractImplementor) session, null);
+	  }
+	}
+	transactionTemplate.executeWithoutResult(status -> {
+	  long version = changeVersions.current();
+	  rows.forEach(row -> row[6] = version);
+	  jdbcTemplate.batchUpdate(INSERT_CONTACT, rows);
+	});
+	for (Object[] row : rows) {
+	  searchIndex.add((Long) row[0], (String) row[1], (String) row[2], (String) row[3]);
+	  aggregates.added(Contact.Status.valueOf((String) row[4]), (Long) row[5]);
+	}
+  }
+
+  private List<Object[]> companies(int count, long seed) {
+	IdentifierGenerator ids = sessionFactory.getMetamodel().entityPersister(Company.class).getIdentifierGenerator();
+	List<Object[]> rows = new ArrayList<>(count);
+	try (StatelessSession session = sessionFactory.openStatelessSession()) {
+	  for (String name : companyNames(count, seed)) {
+		rows.add(new Object[]{ids.generate((SharedSessionContractImplementor) session, null), name, null});
+	  }
+	}
+	return rows;
+  }
+
+  // the first names are the original demo companies, then shuffled prefix and suffix pairs, numbered once used up
+  static List<String> companyNames(int count, long seed) {
+	List<String> pairs = new ArrayList<>();
+	for (String prefix : COMPANY_PREFIXES) {
+	  for (String suffix : COMPANY_SUFFIXES) {
+		pairs.add(prefix + " " + suffix);
+	  }
+	}
+	List<String> first = Arrays.asList("Path-Way Electronics", "E-Tech Management", "Path-E-Tech Management");
+	pairs.removeAll(first);
+	Collections.shuffle(pairs, new Random(seed));
+	pairs.addAll(0, first);
+	List<String> names = new ArrayList<>(count);
+	for (int i = 0; i < count; i++) {
+	  String name = pairs.get(i % pairs.size());
+	  names.add(i < pairs.size() ? name : name + " " + (i / pairs.size() + 1));
+	}
+	return names;
+  }
+
+  // rows first..last-1 as {null id, first name, last name, email, status, company id, null version}
+  static List<Object[]> contacts(long seed, int first, int last, List<Object[]> companies, double[] companyWeights) {
+	Random random = new Random(seed * 31 + first);
+	double[] firstNameWeights = cumulativeWeights(FIRST_NAMES.length, NAME_SKEW);
+	double[] lastNameWeights = cumulativeWeights(LAST_NAMES.length, NAME_SKEW);
+	Contact.Status[] statuses = Contact.Status.values();
+	List<Object[]> rows = new ArrayList<>(last - first);
+	for (int i = first; i < last; i++) {
+	  String firstName = FIRST_NAMES[pick(firstNameWeights, random)];
+	  String lastName = LAST_NAMES[pick(lastNameWeights, random)];
+	  Object[] company = companies.isEmpty() ? null : companies.get(pick(companyWeights, random));
+	  String domain = company == null ? "example" : ((String) company[1]).replaceAll("[\\s-]", "");
+	  String email = (firstName + "." + lastName + (i == 0 ? "" : String.valueOf(i)) + "@" + domain + ".com").toLowerCase(Locale.ROOT);
+	  int status = random.nextInt(1000);
+	  int index = 0;
+	  while (status >= STATUS_WEIGHTS[index]) {
+		status -= STATUS_WEIGHTS[index++];
+	  }
+	  rows.add(new Object[]{null, firstName, lastName, email, statuses[index].name(), company == null ? null : company[0], null});
+	}
+	return rows;
+  }
+
+  // cumulative weights of rank^-skew, the first rank the most likely
+  static double[] cumulativeWeights(int size, double skew) {
+	double[] weights = new double[size];
+	double total = 0;
+	for (int rank = 0; rank < size; rank++) {
+	  total += Math.pow(rank + 1, -skew);
+	  weights[rank] = total;
+	}
+	return weights;
+  }
+
+  private static int pick(double[] cumulativeWeights, Random random) {
+	int index = Arrays.binarySearch(cumulativeWeights, random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1]);
+	return Math.min(index < 0 ? -index - 1 : index, cumulativeWeights.length - 1);
+  }
+
+  static final class SeedResult {
+	private final int companies;
+	private final int contacts;
+	private final long elapsedMillis;
+
+	SeedResult(int companies, int contacts, long elapsedMillis) {
+	  this.companies = companies;
+	  this.contacts = contacts;
+	  this.elapsedMillis = elapsedMillis;
+	}
+
+	public int getCompanies() {
+	  return companies;
+	}
+
+	public int getContacts() {
+	  return contacts;
+	}
+
+	public long getElapsedMillis() {
+	  return elapsedMillis;
+	}
+
+	public double getRowsPerSecond() {
+	  return elapsedMillis == 0 ? contacts : contacts * 1000.0 / elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+	  return String.format("%d companies, %d contacts in %d ms (%.0f rows/s)", companies, contacts, elapsedMillis, getRowsPerSecond());
+	}
+  }
+}
+
+/*
+ * Seeding on demand: POST /actuator/seed with optional companies, contacts and seed, defaults from
+ * custom.value.seed.*. Adds to what is already there. Not exposed unless listed in
+ * management.endpoints.web.exposure.include, admins only, and a request may add at most max-contacts.
+ */
+@org.springframework.stereotype.Component
+@Endpoint(id = "seed")
+class SeedEndpoint {
+  private final ContactSeeder seeder;
+  private final int companies;
+  private final int contacts;
+  private final long seed;
+  private final int maxContacts;
+
+  public SeedEndpoint(ContactSeeder seeder,
+					  @Value("${custom.value.seed.companies:20}") int companies,
+					  @Value("${custom.value.seed.contacts:1000}") int contacts,
+					  @Value("${custom.value.seed.seed:0}") long seed,
+					  @Value("${custom.value.seed.max-contacts:1000000}") int maxContacts) {
+	this.seeder = seeder;
+	this.companies = companies;
+	this.contacts = contacts;
+	this.seed = seed;
+	this.maxContacts = maxContacts;
+  }
+
+  @WriteOperation
+  public ContactSeeder.SeedResult seed(@Nullable Integer companies, @Nullable Integer contacts, @Nullable Long seed) {
+	int companyCount = companies == null ? this.companies : companies;
+	int contactCount = contacts == null ? this.contacts : contacts;
+	if (companyCount < 0 || companyCount > maxContacts || contactCount < 0 || contactCount > maxContacts) {
+	  throw new InvalidEndpointRequestException("companies and contacts must be between 0 and " + maxContacts,
+			"Invalid seed size");
+	}
+	return seeder.seed(companyCount, contactCount, seed == null ? this.seed : seed);
+  }
+}
+
+/*
+ * Contacts changed since a change version for clients that keep a copy: rows written after it, ids
+ * deleted after it and the version to ask from next time. Streamed from forward-only cursors, without
+ * a version it is a full snapshot. The version handed out is the ChangeVersions watermark, rows of
+ * transactions still open or written while streaming come again with the next delta. Reads go to the
+ * primary, a lagging replica could be missing commits below the watermark.
+ */
+@Service
+class ContactSyncService {
+  private final ContactRepository contactRepository;
+  private final CompanyRepository companyRepository;
+  private final ContactTombstoneRepository tombstoneRepository;
+  private final ChangeVersions changeVersions;
+
+  public ContactSyncService(ContactRepository contactRepository,
+							CompanyRepository companyRepository,
+							ContactTombstoneRepository tombstoneRepository,
+							ChangeVersions changeVersions) {
+	this.contactRepository = contactRepository;
+	this.companyRepository = companyRepository;
+	this.tombstoneRepository = tombstoneRepository;
+	this.changeVersions = changeVersions;
+  }
+
+  // three indexed max lookups, nothing is read from the contacts themselves
+  @Transactional
+  public long currentVersion() {
+	return changeVersions.watermark(() ->
+		  Math.max(contactRepository.maxVersion(), Math.max(companyRepository.maxVersion(), tombstoneRepository.maxVersion())));
+  }
+
+  @Transactional
+  public void exportChanges(long since, long version, OutputStream out) throws IOException {
+	boolean full = since <= 0;
+	JsonGenerator generator = new JsonFactory().createGenerator(out, JsonEncoding.UTF8);
+	generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+	generator.writeStartObject();
+	generator.writeNumberField("version", version);
+	generator.writeBooleanField("full", full);
+	generator.writeArrayFieldStart("changed");
+	try (Stream<ContactRow> rows = full ? contactRepository.streamRows() : contactRepository.streamRowsChangedSince(since)) {
+	  Iterator<ContactRow> iterator = rows.iterator();
+	  while (iterator.hasNext()) {
+		ExportFormat.writeJson(generator, iterator.next());
+	  }
+	}
+	generator.writeEndArray();
+	generator.writeArrayFieldStart("deleted");
+	if (!full) {
+	  try (Stream<Long> ids = tombstoneRepository.streamContactIdsDeletedSince(since)) {
+		Iterator<Long> iterator = ids.iterator();
+		while (iterator.hasNext()) {
+		  generator.writeNumber(iterator.next());
+		}
+	  }
+	}
+	generator.writeEndArray();
+	generator.writeEndObject();
+	generator.close();
+  }
+}
+
+/*
+ * GET /api/contacts/changes?since=<version> for integration clients (HTTP basic) and the offline PWA
+ * (session). The current version is the ETag, a poll that already has it gets 304 and no body.
+ */
+@RestController
+@RequestMapping("/api/contacts")
+class ContactSyncController {
+  private final ContactSyncService syncService;
+
+  public ContactSyncController(ContactSyncService syncService) {
+	this.syncService = syncService;
+  }
+
+  @GetMapping("/changes")
+  public void changes(@RequestParam(defaultValue = "0") long since, ServletWebRequest request,
+					  HttpServletResponse response) throws IOException {
+	long version = syncService.currentVersion();
+	// revalidated on every poll instead of the no-store the security headers would add
+	response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+	if (request.checkNotModified("\"" + version + "\"")) {
+	  return;
+	}
+	response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+	syncService.exportChanges(since, version, response.getOutputStream());
+  }
+}
+
+/*
  * 	Type's
- */
\ No newline at end of file
+ */
+/*
+ * Components and caches that can give memory back when the node passes its heap budget.
+ */
+interface MemoryPressureListener {
+  void onMemoryPressure();
+}
+
+// views and forms that hold per-session data beyond their state nodes
+interface FootprintReporter {
+  void reportFootprint(UiFootprint footprint);
+}
+
+/*
+ * Estimated retained size of one UI. The per-object constants are rough averages (state node with its
+ * feature maps, grid row with its key mapping, binding with converters and listeners), good enough to
+ * compare sessions and spot growth, not an exact heap measurement.
+ */
+final class UiFootprint implements Serializable {
+  static final long STATE_NODE_BYTES = 512;
+  static final long GRID_ITEM_BYTES = 320;
+  static final long BOUND_FIELD_BYTES = 1024;
+  static final long BEAN_BYTES = 1024;
+
+  private final int uiId;
+  private final String route;
+  private int stateNodes;
+  private int gridItems;
+  private int boundFields;
+  private int beans;
+
+  UiFootprint(int uiId, String route) {
+	this.uiId = uiId;
+	this.route = route;
+  }
+
+  void addStateNode() {
+	stateNodes++;
+  }
+
+  void addGridItems(int items) {
+	gridItems += items;
+  }
+
+  void addBinder(int fields, boolean hasBean) {
+	boundFields += fields;
+	beans += hasBean ? 1 : 0;
+  }
+
+  public int getUiId() {
+	return uiId;
+  }
+
+  public String getRoute() {
+	return route;
+  }
+
+  public int getStateNodes() {
+	return stateNodes;
+  }
+
+  public int getGridItems() {
+	return gridItems;
+  }
+
+  public int getBoundFields() {
+	return boundFields;
+  }
+
+  public long getEstimatedBytes() {
+	return stateNodes * STATE_NODE_BYTES + gridItems * GRID_ITEM_BYTES
+		  + boundFields * BOUND_FIELD_BYTES + beans * BEAN_BYTES;
+  }
+}
+
+final class SessionFootprint implements Serializable {
+  static final SessionFootprint EMPTY = new SessionFootprint("-", Collections.emptyList(), null);
+
+  private final String user;
+  private final List<UiFootprint> uis;
+  private final LocalDateTime sampledAt;
+
+  SessionFootprint(String user, List<UiFootprint> uis, LocalDateTime sampledAt) {
+	this.user = user;
+	this.uis = uis;
+	this.sampledAt = sampledAt;
+  }
+
+  public String getUser() {
+	return user;
+  }
+
+  public List<UiFootprint> getUis() {
+	return uis;
+  }
+
+  public LocalDateTime getSampledAt() {
+	return sampledAt;
+  }
+
+  public int getStateNodes() {
+	return uis.stream().mapToInt(UiFootprint::getStateNodes).sum();
+  }
+
+  public int getGridItems() {
+	return uis.stream().mapToInt(UiFootprint::getGridItems).sum();
+  }
+
+  public int getBoundFields() {
+	return uis.stream().mapToInt(UiFootprint::getBoundFields).sum();
+  }
+
+  public long getEstimatedBytes() {
+	return uis.stream().mapToLong(UiFootprint::getEstimatedBytes).sum();
+  }
+}
+
+final class DaemonThreads {
+  private DaemonThreads() {
+  }
+
+  static ThreadFactory of(String name) {
+	AtomicInteger counter = new AtomicInteger();
+	return runnable -> {
+	  Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+	  thread.setDaemon(true);
+	  return thread;
+	};
+  }
+}
+
+final class ContactChange {
+  enum Type {
+	CREATED, UPDATED, DELETED
+  }
+
+  private final Type type;
+  private final ContactRow row;
+  private final long origin;
+
+  ContactChange(Type type, ContactRow row, long origin) {
+	this.type = type;
+	this.row = row;
+	this.origin = origin;
+  }
+
+  public Type getType() {
+	return type;
+  }
+
+  public ContactRow getRow() {
+	return row;
+  }
+
+  public long getOrigin() {
+	return origin;
+  }
+
+  // a contact created and then edited within one window is still new to the receivers
+  static ContactChange merge(ContactChange previous, ContactChange next) {
+	if (previous.type == Type.CREATED && next.type == Type.UPDATED) {
+	  return new ContactChange(Type.CREATED, next.row, next.origin);
+	}
+	return next;
+  }
+}
+
+enum ExportFormat {
+  CSV("csv", "text/csv") {
+	@Override
+	ContactExportWriter open(OutputStream out) throws IOException {
+	  Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+	  writer.write("firstName,lastName,email,status,company\n");
+	  return new ContactExportWriter() {
+		@Override
+		public void write(ContactRow row) throws IOException {
+		  writer.write(CsvLine.escape(row.getFirstName()) + ',' +
+				CsvLine.escape(row.getLastName()) + ',' +
+				CsvLine.escape(row.getEmail()) + ',' +
+				(row.getStatus() == null ? "" : row.getStatus().name()) + ',' +
+				CsvLine.escape(row.getCompanyName()) + '\n');
+		}
+
+		@Override
+		public void close() throws IOException {
+		  writer.flush();
+		}
+	  };
+	}
+  },
+  JSON("json", "application/json") {
+	@Override
+	ContactExportWriter open(OutputStream out) throws IOException {
+	  JsonGenerator generator = new JsonFactory().createGenerator(out, JsonEncoding.UTF8);
+	  generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+	  generator.writeStartArray();
+	  return new ContactExportWriter() {
+		@Override
+		public void write(ContactRow row) throws IOException {
+		  writeJson(generator, row);
+		}
+
+		@Override
+		public void close() throws IOException {
+		  generator.writeEndArray();
+		  generator.close();
+		}
+	  };
+	}
+  };
+
+  private final String extension;
+  private final String contentType;
+
+  ExportFormat(String extension, String contentType) {
+	this.extension = extension;
+	this.contentType = contentType;
+  }
+
+  public String getExtension() {
+	return extension;
+  }
+
+  public String getContentType() {
+	return contentType;
+  }
+
+  abstract ContactExportWriter open(OutputStream out) throws IOException;
+
+  static void writeJson(JsonGenerator generator, ContactRow row) throws IOException {
+	generator.writeStartObject();
+	generator.writeNumberField("id", row.getId());
+	generator.writeStringField("firstName", row.getFirstName());
+	generator.writeStringField("lastName", row.getLastName());
+	generator.writeStringField("email", row.getEmail());
+	generator.writeStringField("status", row.getStatus() == null ? null : row.getStatus().name());
+	generator.writeStringField("company", row.getCompanyName());
+	generator.writeEndObject();
+  }
+}
+
+interface ContactExportWriter extends Closeable {
+  void write(ContactRow row) throws IOException;
+}
+
+/*
+ * Single line CSV splitting with double-quote escaping, quoted fields may not span lines.
+ */
+final class CsvLine {
+  private CsvLine() {
+  }
+
+  static String[] split(String line) {
+	List<String> values = new ArrayList<>();
+	StringBuilder value = new StringBuilder();
+	boolean quoted = false;
+	for (int i = 0; i < line.length(); i++) {
+	  char c = line.charAt(i);
+	  if (quoted) {
+		if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+		  value.append('"');
+		  i++;
+		} else if (c == '"') {
+		  quoted = false;
+		} else {
+		  value.append(c);
+		}
+	  } else if (c == '"') {
+		quoted = true;
+	  } else if (c == ',') {
+		values.add(value.toString());
+		value.setLength(0);
+	  } else {
+		value.append(c);
+	  }
+	}
+	values.add(value.toString());
+	return values.toArray(new String[0]);
+  }
+
+  static String escape(String value) {
+	if (value == null) {
+	  return "";
+	}
+	if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+	  return value;
+	}
+	return '"' + value.replace("\"", "\"\"") + '"';
+  }
+}
+
+/*
+ * Pageable addressed by raw offset/limit, Vaadin data providers don't ask for page aligned windows.
+ */
+class OffsetPageRequest implements Pageable {
+  private final long offset;
+  private final int limit;
+  private final Sort sort;
+
+  OffsetPageRequest(long offset, int limit, Sort sort) {
+	if (offset < 0) {
+	  throw new IllegalArgumentException("Offset must not be less than zero");
+	}
+	if (limit < 1) {
+	  throw new IllegalArgumentException("Limit must not be less than one");
+	}
+	this.offset = offset;
+	this.limit = limit;
+	this.sort = sort == null ? Sort.unsorted() : sort;
+  }
+
+  @Override
+  public int getPageNumber() {
+	return (int) (offset / limit);
+  }
+
+  @Override
+  public int getPageSize() {
+	return limit;
+  }
+
+  @Override
+  public long getOffset() {
+	return offset;
+  }
+
+  @Override
+  public Sort getSort() {
+	return sort;
+  }
+
+  @Override
+  public Pageable next() {
+	return new OffsetPageRequest(offset + limit, limit, sort);
+  }
+
+  @Override
+  public Pageable previousOrFirst() {
+	return hasPrevious() ? new OffsetPageRequest(Math.max(0, offset - limit), limit, sort) : first();
+  }
+
+  @Override
+  public Pageable first() {
+	return new OffsetPageRequest(0, limit, sort);
+  }
+
+  @Override
+  public boolean hasPrevious() {
+	return offset > 0;
+  }
+}
+
+/*
+ * Position in a contact listing ordered by (property, id), nulls sort after every value.
+ * Unkeyed cursors point at either end of the listing; the token form is opaque to clients.
+ */
+final class KeysetCursor {
+  static final List<String> PROPERTIES = Arrays.asList("id", "firstName", "lastName", "email", "status");
+
+  private final String property;
+  private final boolean ascending;
+  private final boolean backward;
+  private final boolean keyed;
+  private final Object value;
+  private final Long id;
+
+  private KeysetCursor(String property, boolean ascending, boolean backward, boolean keyed, Object value, Long id) {
+	if (!PROPERTIES.contains(property)) {
+	  throw new IllegalArgumentException("Keyset paging is not supported on " + property);
+	}
+	this.property = property;
+	this.ascending = ascending;
+	this.backward = backward;
+	this.keyed = keyed;
+	this.value = value;
+	this.id = id;
+  }
+
+  // Single sort column, the id tiebreaker is implied
+  static boolean supports(Sort sort) {
+	List<Sort.Order> orders = sort.toList();
+	return orders.size() <= 1 && orders.stream().allMatch(order -> PROPERTIES.contains(order.getProperty()));
+  }
+
+  static KeysetCursor first(Sort sort) {
+	Sort.Order order = order(sort);
+	return new KeysetCursor(order.getProperty(), order.isAscending(), false, false, null, null);
+  }
+
+  static KeysetCursor last(Sort sort) {
+	Sort.Order order = order(sort);
+	return new KeysetCursor(order.getProperty(), order.isAscending(), true, false, null, null);
+  }
+
+  static KeysetCursor after(Sort sort, ContactRow row) {
+	return first(sort).after(row);
+  }
+
+  static KeysetCursor before(Sort sort, ContactRow row) {
+	return first(sort).before(row);
+  }
+
+  KeysetCursor after(ContactRow row) {
+	return new KeysetCursor(property, ascending, false, true, valueOf(row), row.getId());
+  }
+
+  KeysetCursor before(ContactRow row) {
+	return new KeysetCursor(property, ascending, true, true, valueOf(row), row.getId());
+  }
+
+  String getProperty() {
+	return property;
+  }
+
+  boolean isIdOnly() {
+	return "id".equals(property);
+  }
+
+  boolean isAscending() {
+	return ascending;
+  }
+
+  boolean isBackward() {
+	return backward;
+  }
+
+  boolean isKeyed() {
+	return keyed;
+  }
+
+  Object getValue() {
+	return value;
+  }
+
+  Long getId() {
+	return id;
+  }
+
+  String toToken() {
+	String key = !keyed ? ":" : id + ":" + (value == null ? "-" : "=" + (value instanceof Contact.Status ? ((Contact.Status) value).name() : value));
+	String raw = property + ":" + (ascending ? "A" : "D") + ":" + (backward ? "P" : "N") + ":" + key;
+	return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+
+  static KeysetCursor fromToken(String token) {
+	try {
+	  String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":", 5);
+	  if (parts.length != 5 || !parts[1].matches("[AD]") || !parts[2].matches("[NP]")) {
+		throw new IllegalArgumentException("Invalid cursor token");
+	  }
+	  boolean keyed = !parts[3].isEmpty();
+	  Object value = null;
+	  if (keyed && parts[4].startsWith("=")) {
+		value = "status".equals(parts[0]) ? Contact.Status.valueOf(parts[4].substring(1)) : parts[4].substring(1);
+	  } else if (keyed && !"-".equals(parts[4])) {
+		throw new IllegalArgumentException("Invalid cursor token");
+	  }
+	  return new KeysetCursor(parts[0], "A".equals(parts[1]), "P".equals(parts[2]), keyed, value,
+			keyed ? Long.valueOf(parts[3]) : null);
+	} catch (IllegalArgumentException e) {
+	  throw new IllegalArgumentException("Invalid cursor token", e);
+	}
+  }
+
+  @Override
+  public String toString() {
+	return toToken();
+  }
+
+  private Object valueOf(ContactRow row) {
+	switch (property) {
+	  case "firstName":
+		return row.getFirstName();
+	  case "lastName":
+		return row.getLastName();
+	  case "email":
+		return row.getEmail();
+	  case "status":
+		return row.getStatus();
+	  default:
+		return row.getId();
+	}
+  }
+
+  private static Sort.Order order(Sort sort) {
+	if (!supports(sort)) {
+	  throw new IllegalArgumentException("Keyset paging needs at most one sort column, got " + sort);
+	}
+	return sort.isSorted() ? sort.toList().get(0) : Sort.Order.asc("id");
+  }
+}
+
+/*
+ * One keyset page with cursors to its neighbours, null where the listing ends.
+ */
+final class KeysetPage {
+  private final List<ContactRow> content;
+  private final KeysetCursor next;
+  private final KeysetCursor previous;
+
+  private KeysetPage(List<ContactRow> content, KeysetCursor next, KeysetCursor previous) {
+	this.content = content;
+	this.next = next;
+	this.previous = previous;
+  }
+
+  // rows holds up to limit + 1 contacts, the extra one only tells whether the scan direction continues
+  static KeysetPage of(KeysetCursor cursor, List<ContactRow> rows, int limit) {
+	boolean more = rows.size() > limit;
+	if (!cursor.isBackward()) {
+	  List<ContactRow> content = more ? rows.subList(0, limit) : rows;
+	  return new KeysetPage(content,
+			more ? cursor.after(content.get(content.size() - 1)) : null,
+			cursor.isKeyed() && !content.isEmpty() ? cursor.before(content.get(0)) : null);
+	}
+	List<ContactRow> content = more ? rows.subList(rows.size() - limit, rows.size()) : rows;
+	return new KeysetPage(content,
+		  cursor.isKeyed() && !content.isEmpty() ? cursor.after(content.get(content.size() - 1)) : null,
+		  more ? cursor.before(content.get(0)) : null);
+  }
+
+  public List<ContactRow> getContent() {
+	return content;
+  }
+
+  public Optional<KeysetCursor> getNext() {
+	return Optional.ofNullable(next);
+  }
+
+  public Optional<KeysetCursor> getPrevious() {
+	return Optional.ofNullable(previous);
+  }
+}
+
+/*
+ * Remembers the grid's last window, so a request that starts right after (or ends right before) one of
+ * its rows seeks from that row instead of skipping offset rows. Other requests fall back to offset paging.
+ */
+final class KeysetScroll {
+  private String filter;
+  private Sort sort;
+  private int offset;
+  private List<ContactRow> rows = Collections.emptyList();
+
+  List<ContactRow> fetch(ContactService contactService, String filter, int offset, int limit, Sort sort) {
+	List<ContactRow> result = null;
+	if (KeysetCursor.supports(sort)) {
+	  boolean sameListing = filter.equals(this.filter) && sort.equals(this.sort);
+	  int anchorAfter = offset - 1 - this.offset;
+	  int anchorBefore = offset + limit - this.offset;
+	  if (offset == 0) {
+		result = contactService.seek(filter, KeysetCursor.first(sort), limit).getContent();
+	  } else if (sameListing && anchorAfter >= 0 && anchorAfter < rows.size()) {
+		result = contactService.seek(filter, KeysetCursor.after(sort, rows.get(anchorAfter)), limit).getContent();
+	  } else if (sameListing && anchorBefore >= 0 && anchorBefore < rows.size()) {
+		result = contactService.seek(filter, KeysetCursor.before(sort, rows.get(anchorBefore)), limit).getContent();
+		if (result.size() != limit) {
+		  result = null;
+		}
+	  }
+	}
+	if (result == null) {
+	  result = contactService.fetch(filter, offset, limit, sort);
+	}
+	remember(filter, sort, offset, result);
+	return result;
+  }
+
+  void remember(String filter, Sort sort, int offset, List<ContactRow> rows) {
+	this.filter = filter;
+	this.sort = sort;
+	this.offset = offset;
+	this.rows = rows;
+  }
+
+  void reset() {
+	remember(null, null, 0, Collections.emptyList());
+  }
+
+  int size() {
+	return rows.size();
+  }
+}
@@ -0,0 +1,42 @@
+package com.full_webapp.vsapp;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+class CompanyServiceTests {
+
+  @Autowired
+  private CompanyService companyService;
+
+  @Autowired
+  private ContactService contactService;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  private Statistics statistics;
+
+  @BeforeEach
+  void setUp() {
+	statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+	statistics.clear();
+  }
+
+  @Test
+  void getStatsIssuesSingleQuery() {
+	Map<String, Integer> stats = companyService.getStats();
+
+	assertEquals(1, statistics.getPrepareStatementCount());
+	assertEquals(contactService.count(), stats.values().stream().mapToLong(Integer::longValue).sum());
+  }
+}
@@ -0,0 +1,104 @@
+package com.full_webapp.vsapp;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+class ContactAggregatesTests {
+
+  @Autowired
+  private ContactAggregates aggregates;
+
+  @Autowired
+  private ContactService contactService;
+
+  @Autowired
+  private CompanyService companyService;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Test
+  void matchesGroupedCounts() {
+	assertEquals(contactService.count(), aggregates.total());
+	for (Contact.Status status : Contact.Status.values()) {
+	  assertEquals(count("select count(*) from contact where status = ?", status.name()), aggregates.count(status));
+	}
+	for (Company company : companyService.findAll()) {
+	  assertEquals(count("select count(*) from contact where company_id = ?", company.getId()), aggregates.countForCompany(company.getId()));
+	}
+  }
+
+  @Test
+  void followsSaveAndDelete() {
+	List<Company> companies = companyService.findAll();
+	Company first = companies.get(0);
+	Company second = companies.get(1);
+	Contact contact = new Contact();
+	contact.setFirstName("Aggregate");
+	contact.setLastName("Counted");
+	contact.setStatus(Contact.Status.ImportedLead);
+	contact.setCompany(first);
+	long leads = aggregates.count(Contact.Status.ImportedLead);
+	long customers = aggregates.count(Contact.Status.Customer);
+	long atFirst = aggregates.countForCompany(first.getId());
+	long atSecond = aggregates.countForCompany(second.getId());
+
+	Contact saved = contactService.save(contact);
+	assertEquals(leads + 1, aggregates.count(Contact.Status.ImportedLead));
+	assertEquals(atFirst + 1, aggregates.countForCompany(first.getId()));
+
+	Contact edited = contactService.findById(saved.getId()).get();
+	edited.setStatus(Contact.Status.Customer);
+	edited.setCompany(second);
+	contactService.save(edited);
+	contactService.save(edited);
+	assertEquals(leads, aggregates.count(Contact.Status.ImportedLead));
+	assertEquals(customers + 1, aggregates.count(Contact.Status.Customer));
+	assertEquals(atFirst, aggregates.countForCompany(first.getId()));
+	assertEquals(atSecond + 1, aggregates.countForCompany(second.getId()));
+
+	contactService.delete(edited);
+	assertEquals(customers, aggregates.count(Contact.Status.Customer));
+	assertEquals(atSecond, aggregates.countForCompany(second.getId()));
+  }
+
+  @Test
+  void deleteCountsTheStoredRowOnce() {
+	Company company = companyService.findAll().get(0);
+	Contact contact = new Contact();
+	contact.setFirstName("Aggregate");
+	contact.setLastName("Stale");
+	contact.setStatus(Contact.Status.ImportedLead);
+	contact.setCompany(company);
+	Contact saved = contactService.save(contact);
+	Contact stale = contactService.findById(saved.getId()).get();
+	Contact current = contactService.findById(saved.getId()).get();
+	current.setStatus(Contact.Status.Contacted);
+	contactService.save(current);
+	long leads = aggregates.count(Contact.Status.ImportedLead);
+	long contacted = aggregates.count(Contact.Status.Contacted);
+	long atCompany = aggregates.countForCompany(company.getId());
+
+	// loaded before the status change, the delete still takes away the stored status
+	contactService.delete(stale);
+	assertEquals(leads, aggregates.count(Contact.Status.ImportedLead));
+	assertEquals(contacted - 1, aggregates.count(Contact.Status.Contacted));
+	assertEquals(atCompany - 1, aggregates.countForCompany(company.getId()));
+
+	contactService.delete(current);
+	assertEquals(contacted - 1, aggregates.count(Contact.Status.Contacted));
+	assertEquals(atCompany - 1, aggregates.countForCompany(company.getId()));
+	matchesGroupedCounts();
+  }
+
+  private long count(String sql, Object argument) {
+	return jdbcTemplate.queryForObject(sql, Long.class, argument);
+  }
+}
@@ -0,0 +1,129 @@
+package com.full_webapp.vsapp;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.shared.Registration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class ContactBroadcasterTests {
+
+  @Autowired
+  private ContactService contactService;
+
+  private ContactBroadcaster broadcaster;
+  private final BlockingQueue<ContactBroadcaster.Batch> batches = new LinkedBlockingQueue<>();
+  private List<Contact> contacts;
+
+  @BeforeEach
+  void setUp() {
+	// the window outlasts the test, changes go out on flush; at most three queued changes per UI
+	broadcaster = new ContactBroadcaster(60_000, 3, 1);
+	contacts = contactService.fetch(null, 0, 5, Sort.by("id")).stream()
+		  .map(row -> contactService.findById(row.getId()).get())
+		  .collect(Collectors.toList());
+  }
+
+  @AfterEach
+  void tearDown() {
+	broadcaster.shutdown();
+	UI.setCurrent(null);
+  }
+
+  @Test
+  void coalescesChangesWithinWindow() throws Exception {
+	broadcaster.register(TestSessions.attachedUi(), batches::add);
+	Contact contact = contacts.get(0);
+	String lastName = contact.getLastName();
+	broadcaster.publish(ContactChange.Type.CREATED, contact);
+	contact.setLastName(lastName + "-pushed");
+	broadcaster.publish(ContactChange.Type.UPDATED, contact);
+	broadcaster.publish(ContactChange.Type.UPDATED, contacts.get(1));
+	broadcaster.flush();
+
+	ContactBroadcaster.Batch batch = batches.poll(5, TimeUnit.SECONDS);
+	assertNotNull(batch);
+	assertEquals(2, batch.getChanges().size());
+	ContactChange merged = batch.getChanges().stream()
+		  .filter(change -> change.getRow().getId().equals(contact.getId()))
+		  .findFirst().get();
+	assertEquals(ContactChange.Type.CREATED, merged.getType(), "created then edited is still new to the receivers");
+	assertEquals(lastName + "-pushed", merged.getRow().getLastName());
+	assertTrue(batch.isStructural());
+	assertNull(batches.poll(200, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  void overflowingQueueCollapsesIntoRefresh() throws Exception {
+	broadcaster.register(TestSessions.attachedUi(), batches::add);
+	contacts.forEach(contact -> broadcaster.publish(ContactChange.Type.UPDATED, contact));
+	broadcaster.flush();
+
+	ContactBroadcaster.Batch batch = batches.poll(5, TimeUnit.SECONDS);
+	assertNotNull(batch);
+	assertTrue(batch.isStructural());
+	assertTrue(batch.getChanges().isEmpty());
+  }
+
+  @Test
+  void publishingUiGetsNoEcho() throws Exception {
+	UI publisher = TestSessions.attachedUi();
+	BlockingQueue<ContactBroadcaster.Batch> published = new LinkedBlockingQueue<>();
+	broadcaster.register(publisher, published::add);
+	broadcaster.register(TestSessions.attachedUi(), batches::add);
+
+	UI.setCurrent(publisher);
+	broadcaster.publish(ContactChange.Type.UPDATED, contacts.get(0));
+	UI.setCurrent(null);
+	broadcaster.flush();
+
+	ContactBroadcaster.Batch batch = batches.poll(5, TimeUnit.SECONDS);
+	assertNotNull(batch);
+	assertFalse(batch.isStructural());
+	assertEquals(1, batch.getChanges().size());
+	assertNull(published.poll(200, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  void detachedUiIsDropped() throws Exception {
+	broadcaster.register(new UI(), batches::add);
+	broadcaster.register(TestSessions.attachedUi(), batches::add);
+	broadcaster.publish(ContactChange.Type.UPDATED, contacts.get(0));
+	broadcaster.flush();
+
+	assertNotNull(batches.poll(5, TimeUnit.SECONDS));
+	for (int i = 0; i < 50 && broadcaster.subscribers() > 1; i++) {
+	  Thread.sleep(20);
+	}
+	assertEquals(1, broadcaster.subscribers());
+	assertNull(batches.poll(200, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  void removedListenerGetsNothing() throws Exception {
+	Registration registration = broadcaster.register(TestSessions.attachedUi(), batches::add);
+	registration.remove();
+	assertEquals(0, broadcaster.subscribers());
+
+	broadcaster.publish(ContactChange.Type.UPDATED, contacts.get(0));
+	broadcaster.publishReset();
+	broadcaster.flush();
+	assertNull(batches.poll(300, TimeUnit.MILLISECONDS));
+  }
+}
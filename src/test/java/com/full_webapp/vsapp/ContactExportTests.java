@@ -0,0 +1,88 @@
+package com.full_webapp.vsapp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+@SpringBootTest
+class ContactExportTests {
+
+  // only the rows of this test have it in their email
+  private static final String FILTER = "zz-export";
+
+  @Autowired
+  private ContactService contactService;
+
+  @Autowired
+  private CompanyService companyService;
+
+  private Company company;
+  private Contact zoe;
+  private Contact grace;
+
+  @BeforeEach
+  void setUp() {
+	company = companyService.save(new Company("Export Co"));
+	zoe = contact("Zoë", "Lovelace", "zoe@zz-export.test", Contact.Status.Customer, company);
+	// comma, quote and newline in one value
+	grace = contact("Grace", "Hopper, \"Amazing\"\nGrace", "grace@zz-export.test", null, null);
+  }
+
+  @AfterEach
+  void tearDown() {
+	contactService.delete(zoe);
+	contactService.delete(grace);
+	companyService.delete(company);
+  }
+
+  @Test
+  void exportsCsv() throws IOException {
+	assertExport(FILTER, ExportFormat.CSV, "firstName,lastName,email,status,company\n" +
+		  "Zoë,Lovelace,zoe@zz-export.test,Customer,Export Co\n" +
+		  "Grace,\"Hopper, \"\"Amazing\"\"\nGrace\",grace@zz-export.test,,\n");
+  }
+
+  @Test
+  void exportsJson() throws IOException {
+	assertExport(FILTER, ExportFormat.JSON, "[" +
+		  "{\"id\":" + zoe.getId() + ",\"firstName\":\"Zoë\",\"lastName\":\"Lovelace\"," +
+		  "\"email\":\"zoe@zz-export.test\",\"status\":\"Customer\",\"company\":\"Export Co\"}," +
+		  "{\"id\":" + grace.getId() + ",\"firstName\":\"Grace\",\"lastName\":\"Hopper, \\\"Amazing\\\"\\nGrace\"," +
+		  "\"email\":\"grace@zz-export.test\",\"status\":null,\"company\":null}]");
+  }
+
+  @Test
+  void filteredExportHasOnlyMatchingRows() throws IOException {
+	assertExport("GRACE@zz-export", ExportFormat.CSV, "firstName,lastName,email,status,company\n" +
+		  "Grace,\"Hopper, \"\"Amazing\"\"\nGrace\",grace@zz-export.test,,\n");
+	assertExport("zoe@zz-export", ExportFormat.JSON, "[" +
+		  "{\"id\":" + zoe.getId() + ",\"firstName\":\"Zoë\",\"lastName\":\"Lovelace\"," +
+		  "\"email\":\"zoe@zz-export.test\",\"status\":\"Customer\",\"company\":\"Export Co\"}]");
+	assertExport("no-such-contact", ExportFormat.JSON, "[]");
+  }
+
+  private void assertExport(String filter, ExportFormat format, String expected) throws IOException {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	contactService.export(filter, format, out);
+	assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), out.toByteArray(),
+		  () -> new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  private Contact contact(String firstName, String lastName, String email, Contact.Status status, Company company) {
+	Contact contact = new Contact();
+	contact.setFirstName(firstName);
+	contact.setLastName(lastName);
+	contact.setEmail(email);
+	contact.setStatus(status);
+	contact.setCompany(company);
+	return contactService.save(contact);
+  }
+}
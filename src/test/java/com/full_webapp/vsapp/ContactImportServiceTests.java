@@ -0,0 +1,67 @@
+package com.full_webapp.vsapp;
+
+import lombok.extern.java.Log;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Imports into its own database, dropped with the context after the class so the rows don't reach other tests.
+ */
+@Log
+@SpringBootTest(properties = {
+	  "spring.datasource.url=jdbc:h2:mem:vsapp-import;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+	  "spring.jpa.hibernate.ddl-auto=create-drop"})
+@DirtiesContext
+class ContactImportServiceTests {
+  private static final int ROWS = 50_000;
+  // far below what batched inserts reach on H2, a floor against falling back to row-by-row writes
+  private static final double MIN_ROWS_PER_SECOND = 1_000;
+
+  @Autowired
+  private ContactImportService importService;
+
+  @Autowired
+  private ContactService contactService;
+
+  @Test
+  void importsCsvInBatches(@TempDir Path dir) throws IOException {
+	Path csv = dir.resolve("contacts.csv");
+	try (BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+	  writer.write("firstName,lastName,email,status,company\n");
+	  for (int i = 0; i < ROWS; i++) {
+		writer.write("First" + i + ",Last" + i + ",first" + i + "@import.com,Customer,\"Import, Inc " + (i % 20) + "\"\n");
+	  }
+	  writer.write("Broken,Row,broken@import.com,NoSuchStatus,\n");
+	}
+	long before = contactService.count();
+	AtomicInteger progressEvents = new AtomicInteger();
+
+	ContactImportService.ImportResult result;
+	try (InputStream in = Files.newInputStream(csv)) {
+	  result = importService.importCsv(in, progress -> progressEvents.incrementAndGet());
+	}
+
+	assertEquals(ROWS, result.getImported());
+	assertEquals(1, result.getFailed());
+	assertEquals(before + ROWS, contactService.count());
+	assertTrue(progressEvents.get() > 1);
+	assertEquals(1, contactService.findAll("first49999@import").size());
+
+	log.info("CSV import: " + result);
+	assertTrue(result.getRowsPerSecond() >= MIN_ROWS_PER_SECOND, result.toString());
+  }
+}
@@ -0,0 +1,114 @@
+package com.full_webapp.vsapp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@SpringBootTest
+class ContactKeysetTests {
+  private static final String FILTER = "@keyset.test";
+
+  @Autowired
+  private ContactService contactService;
+
+  private final List<Contact> contacts = new ArrayList<>();
+
+  // few distinct values and some nulls, so ties on the sort column are decided by id
+  @BeforeEach
+  void setUp() {
+	Contact.Status[] statuses = {Contact.Status.Customer, Contact.Status.Contacted, null};
+	for (int i = 0; i < 23; i++) {
+	  Contact contact = new Contact();
+	  contact.setFirstName("First" + i % 4);
+	  contact.setLastName("Last" + i % 3);
+	  contact.setEmail("c" + i % 5 + FILTER);
+	  contact.setStatus(statuses[i % statuses.length]);
+	  contacts.add(contactService.save(contact));
+	}
+  }
+
+  @AfterEach
+  void tearDown() {
+	contacts.forEach(contactService::delete);
+  }
+
+  @Test
+  void walksEveryColumnInBothDirections() {
+	check(Sort.unsorted(), Contact::getId);
+	check(Sort.by("firstName"), Contact::getFirstName);
+	check(Sort.by(Sort.Direction.DESC, "lastName"), Contact::getLastName);
+	check(Sort.by("email"), Contact::getEmail);
+	check(Sort.by("status"), Contact::getStatus);
+	check(Sort.by(Sort.Direction.DESC, "status"), Contact::getStatus);
+  }
+
+  @Test
+  void cursorTokensRoundTrip() {
+	KeysetPage page = contactService.seek(FILTER, KeysetCursor.first(Sort.by("status")), 4);
+	while (page.getNext().isPresent()) {
+	  KeysetCursor next = page.getNext().get();
+	  KeysetPage resumed = contactService.seek(FILTER, KeysetCursor.fromToken(next.toToken()), 4);
+	  page = contactService.seek(FILTER, next, 4);
+	  assertEquals(ids(page.getContent()), ids(resumed.getContent()));
+	}
+  }
+
+  private <T extends Comparable<T>> void check(Sort sort, Function<Contact, T> key) {
+	Comparator<Contact> comparator = Comparator.comparing(key, Comparator.nullsLast(Comparator.naturalOrder()));
+	if (sort.isSorted() && sort.toList().get(0).isDescending()) {
+	  comparator = comparator.reversed();
+	}
+	List<Long> expected = contacts.stream()
+		  .sorted(comparator.thenComparing(Contact::getId, sort.isSorted() && sort.toList().get(0).isDescending()
+				? Comparator.reverseOrder() : Comparator.naturalOrder()))
+		  .map(Contact::getId)
+		  .collect(Collectors.toList());
+
+	List<Long> forward = new ArrayList<>();
+	Optional<KeysetCursor> cursor = Optional.of(KeysetCursor.first(sort));
+	while (cursor.isPresent()) {
+	  KeysetPage page = contactService.seek(FILTER, cursor.get(), 5);
+	  forward.addAll(ids(page.getContent()));
+	  cursor = page.getNext();
+	}
+	assertEquals(expected, forward, sort.toString());
+
+	List<Long> backward = new ArrayList<>();
+	cursor = Optional.of(KeysetCursor.last(sort));
+	while (cursor.isPresent()) {
+	  KeysetPage page = contactService.seek(FILTER, cursor.get(), 5);
+	  assertFalse(page.getContent().isEmpty());
+	  backward.addAll(0, ids(page.getContent()));
+	  cursor = page.getPrevious();
+	}
+	assertEquals(expected, backward, sort.toString());
+
+	// the grid falls back to offset windows for jumps, those have to place the nulls where the keyset does
+	Sort gridSort = Sort.by(sort.stream()
+		  .map(order -> order.isAscending() ? order.nullsLast() : order.nullsFirst())
+		  .collect(Collectors.toList()));
+	List<Long> offset = new ArrayList<>();
+	for (int start = 0; start < contacts.size(); start += 5) {
+	  offset.addAll(ids(contactService.fetch(FILTER, start, 5, gridSort)));
+	}
+	assertEquals(expected, offset, gridSort.toString());
+  }
+
+  private static List<Long> ids(List<ContactRow> rows) {
+	return Collections.unmodifiableList(rows.stream().map(ContactRow::getId).collect(Collectors.toList()));
+  }
+}
@@ -0,0 +1,67 @@
+package com.full_webapp.vsapp;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class ContactSearchCacheTests {
+
+  @Autowired
+  private ContactSearchCache searchCache;
+
+  @Autowired
+  private ContactSearchIndex searchIndex;
+
+  @Autowired
+  private ContactService contactService;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @BeforeEach
+  void setUp() {
+	searchCache.invalidate();
+  }
+
+  @Test
+  void refinesCachedPrefix() {
+	Set<Long> prefix = searchCache.search("Da").get();
+	double refinements = meterRegistry.get("vsapp.search.cache.refined").functionCounter().count();
+
+	Set<Long> refined = searchCache.search("dav").get();
+
+	assertEquals(refinements + 1, meterRegistry.get("vsapp.search.cache.refined").functionCounter().count());
+	assertEquals(searchIndex.search("dav").get(), refined);
+	assertTrue(prefix.containsAll(refined));
+	assertFalse(refined.isEmpty());
+	assertEquals(refined, searchCache.search("DAV").get());
+	assertTrue(searchCache.stats().hitCount() > 0);
+  }
+
+  @Test
+  void writeInvalidatesResults() {
+	Set<Long> before = searchCache.search("zyxw").get();
+	Contact contact = new Contact();
+	contact.setFirstName("Zyxwvu");
+	contact.setLastName("Cached");
+	contact.setEmail("zyxwvu@cached.com");
+	contact.setStatus(Contact.Status.Contacted);
+
+	Contact saved = contactService.save(contact);
+
+	assertTrue(before.isEmpty());
+	assertEquals(1, contactService.count("zyxw"));
+	assertTrue(searchCache.search("zyxw").get().contains(saved.getId()));
+	contactService.delete(saved);
+	assertTrue(searchCache.search("zyxw").get().isEmpty());
+  }
+}
@@ -0,0 +1,89 @@
+package com.full_webapp.vsapp;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/*
+ * Seeds into its own database, dropped with the context after the class so the rows don't reach other tests.
+ */
+@SpringBootTest(properties = {
+	  "spring.datasource.url=jdbc:h2:mem:vsapp-seeder;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+	  "spring.jpa.hibernate.ddl-auto=create-drop"})
+@DirtiesContext
+class ContactSeederTests {
+  private static final int COMPANIES = 5;
+  private static final int ROWS = 100_000;
+  private static final long SEED = 7;
+  // custom.value.seed.chunk-size
+  private static final int CHUNK = 5000;
+
+  @Autowired
+  private ContactSeeder seeder;
+
+  @Autowired
+  private ContactService contactService;
+
+  @Autowired
+  private SeedEndpoint seedEndpoint;
+
+  @Test
+  void sameSeedGeneratesSameRows() {
+	List<Object[]> companies = companies(SEED);
+	double[] weights = ContactSeeder.cumulativeWeights(COMPANIES, ContactSeeder.COMPANY_SKEW);
+
+	List<Object[]> first = ContactSeeder.contacts(SEED, 0, 1000, companies, weights);
+	List<Object[]> second = ContactSeeder.contacts(SEED, 0, 1000, companies, weights);
+	List<Object[]> other = ContactSeeder.contacts(SEED + 1, 0, 1000, companies, weights);
+
+	for (int i = 0; i < first.size(); i++) {
+	  assertArrayEquals(first.get(i), second.get(i));
+	}
+	assertFalse(Arrays.deepEquals(first.toArray(), other.toArray()));
+	assertEquals(ContactSeeder.companyNames(COMPANIES, SEED), ContactSeeder.companyNames(COMPANIES, SEED));
+  }
+
+  @Test
+  void seedsContactsInParallelBatches() {
+	long before = contactService.count();
+
+	ContactSeeder.SeedResult result = seeder.seed(COMPANIES, ROWS, SEED);
+
+	assertEquals(COMPANIES, result.getCompanies());
+	assertEquals(before + ROWS, contactService.count());
+	// the first row of the last chunk, its email is unique through the row number
+	Object[] row = ContactSeeder.contacts(SEED, ROWS - CHUNK, ROWS - CHUNK + 1, companies(SEED),
+		  ContactSeeder.cumulativeWeights(COMPANIES, ContactSeeder.COMPANY_SKEW)).get(0);
+	List<Contact> found = contactService.findAll((String) row[3]);
+	assertEquals(1, found.size());
+	assertEquals(row[1], found.get(0).getFirstName());
+	assertEquals(row[2], found.get(0).getLastName());
+	assertEquals(row[4], found.get(0).getStatus().name());
+  }
+
+  @Test
+  void seedEndpointRejectsUnboundedSizes() {
+	long before = contactService.count();
+
+	assertThrows(InvalidEndpointRequestException.class, () -> seedEndpoint.seed(null, Integer.MAX_VALUE, null));
+	assertThrows(InvalidEndpointRequestException.class, () -> seedEndpoint.seed(-1, null, null));
+	assertEquals(before, contactService.count());
+  }
+
+  private static List<Object[]> companies(long seed) {
+	return ContactSeeder.companyNames(COMPANIES, seed).stream()
+		  .map(name -> new Object[]{null, name})
+		  .collect(Collectors.toList());
+  }
+}
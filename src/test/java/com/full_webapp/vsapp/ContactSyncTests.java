@@ -0,0 +1,196 @@
+package com.full_webapp.vsapp;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class ContactSyncTests {
+
+  @Autowired
+  private ContactSyncController controller;
+
+  @Autowired
+  private ContactService contactService;
+
+  @Autowired
+  private CompanyService companyService;
+
+  @Autowired
+  private ContactRepository contactRepository;
+
+  @Autowired
+  private ChangeVersions changeVersions;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Test
+  void deltaHasChangesAndDeletesSinceVersion() throws Exception {
+	JsonNode snapshot = changes(0, null);
+	assertTrue(snapshot.get("full").asBoolean());
+	assertEquals(contactService.count(), snapshot.get("changed").size());
+	long version = snapshot.get("version").asLong();
+
+	List<ContactRow> rows = contactService.fetch(null, 0, 2, Sort.by("id"));
+	Contact edited = contactService.findById(rows.get(0).getId()).get();
+	edited.setLastName(edited.getLastName() + "-synced");
+	contactService.save(edited);
+	Contact created = new Contact();
+	created.setFirstName("Delta");
+	created.setLastName("Synced");
+	created.setCompany(companyService.findAll().get(0));
+	created = contactService.save(created);
+	Contact deleted = contactService.findById(rows.get(1).getId()).get();
+	contactService.delete(deleted);
+
+	JsonNode delta = changes(version, null);
+	assertFalse(delta.get("full").asBoolean());
+	assertTrue(delta.get("version").asLong() > version);
+	Set<Long> changed = new HashSet<>();
+	delta.get("changed").forEach(row -> changed.add(row.get("id").asLong()));
+	assertEquals(2, changed.size(), "only the edited and the created contact changed");
+	assertTrue(changed.contains(edited.getId()));
+	assertTrue(changed.contains(created.getId()));
+	assertEquals(1, delta.get("deleted").size());
+	assertEquals(deleted.getId().longValue(), delta.get("deleted").get(0).asLong());
+
+	JsonNode caughtUp = changes(delta.get("version").asLong(), null);
+	assertEquals(0, caughtUp.get("changed").size());
+	assertEquals(0, caughtUp.get("deleted").size());
+	contactService.delete(created);
+  }
+
+  @Test
+  void unchangedPollIsNotModified() throws Exception {
+	MockHttpServletResponse first = get(0, null);
+	String etag = first.getHeader(HttpHeaders.ETAG);
+
+	MockHttpServletResponse unchanged = get(0, etag);
+	assertEquals(HttpStatus.NOT_MODIFIED.value(), unchanged.getStatus());
+	assertEquals(0, unchanged.getContentLength());
+
+	Contact contact = contactService.findById(contactService.fetch(null, 0, 1, Sort.by("id")).get(0).getId()).get();
+	contact.setEmail("etag." + contact.getEmail());
+	contactService.save(contact);
+
+	MockHttpServletResponse changed = get(0, etag);
+	assertEquals(HttpStatus.OK.value(), changed.getStatus());
+	assertFalse(etag.equals(changed.getHeader(HttpHeaders.ETAG)));
+  }
+
+  @Test
+  void versionStaysBelowOpenTransactions() throws Exception {
+	long before = changes(0, null).get("version").asLong();
+	CountDownLatch written = new CountDownLatch(1);
+	CountDownLatch commit = new CountDownLatch(1);
+	Contact slow = new Contact();
+	slow.setFirstName("Slow");
+	slow.setLastName("Writer");
+	Thread writer = new Thread(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+	  contactRepository.saveAndFlush(slow);
+	  written.countDown();
+	  try {
+		commit.await(10, TimeUnit.SECONDS);
+	  } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	  }
+	}));
+	writer.start();
+	assertTrue(written.await(10, TimeUnit.SECONDS));
+	assertEquals(1, changeVersions.inFlight());
+
+	Contact fast = new Contact();
+	fast.setFirstName("Fast");
+	fast.setLastName("Writer");
+	fast = contactService.save(fast);
+	assertTrue(fast.getVersion() > slow.getVersion());
+	long watermark = changes(before, null).get("version").asLong();
+	assertTrue(watermark < slow.getVersion(), "a committed later version must not pass the open transaction");
+
+	commit.countDown();
+	writer.join(10_000);
+	Set<Long> changed = new HashSet<>();
+	changes(watermark, null).get("changed").forEach(row -> changed.add(row.get("id").asLong()));
+	assertTrue(changed.contains(slow.getId()), "the late commit comes with the next delta");
+	assertTrue(changed.contains(fast.getId()));
+	// written past the service, so it is removed past the aggregates too
+	contactRepository.deleteById(slow.getId());
+	contactService.delete(fast);
+  }
+
+  // a lease written straight to the table stands for a transaction open on another node
+  @Test
+  void versionStaysBelowOtherNodesOpenTransactions() throws Exception {
+	long foreign = changeVersions.current();
+	jdbcTemplate.update("insert into " + ChangeVersions.LEASES + " (version, taken_at) values (?, ?)",
+		  foreign, new Timestamp(System.currentTimeMillis()));
+	Contact fast = new Contact();
+	fast.setFirstName("Local");
+	fast.setLastName("Writer");
+	fast = contactService.save(fast);
+	try {
+	  assertTrue(changes(0, null).get("version").asLong() < foreign);
+	} finally {
+	  jdbcTemplate.update("delete from " + ChangeVersions.LEASES + " where version = ?", foreign);
+	}
+	assertTrue(changes(0, null).get("version").asLong() >= fast.getVersion());
+	contactService.delete(fast);
+  }
+
+  @Test
+  void expiredLeaseNoLongerHoldsVersion() throws Exception {
+	long abandoned = changeVersions.current();
+	jdbcTemplate.update("insert into " + ChangeVersions.LEASES + " (version, taken_at) values (?, ?)",
+		  abandoned, new Timestamp(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)));
+	Contact contact = new Contact();
+	contact.setFirstName("After");
+	contact.setLastName("Crash");
+	contact = contactService.save(contact);
+
+	assertTrue(changes(0, null).get("version").asLong() >= contact.getVersion());
+	assertEquals(0, changeVersions.inFlight());
+	contactService.delete(contact);
+  }
+
+  private JsonNode changes(long since, String etag) throws Exception {
+	return mapper.readTree(get(since, etag).getContentAsByteArray());
+  }
+
+  private MockHttpServletResponse get(long since, String etag) throws Exception {
+	MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/contacts/changes");
+	if (etag != null) {
+	  request.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+	}
+	MockHttpServletResponse response = new MockHttpServletResponse();
+	controller.changes(since, new ServletWebRequest(request, response), response);
+	return response;
+  }
+}
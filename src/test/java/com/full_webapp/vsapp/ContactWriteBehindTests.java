@@ -0,0 +1,89 @@
+package com.full_webapp.vsapp;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class ContactWriteBehindTests {
+
+  @Autowired
+  private ContactService contactService;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Test
+  void coalescesQueuedSaves() throws Exception {
+	ContactWriteBehind writeBehind = new ContactWriteBehind(contactService, true, 100, 50, 500, 100);
+	try {
+	  Contact contact = contactService.findById(contactService.fetch(null, 0, 1, Sort.unsorted()).get(0).getId()).get();
+	  List<CompletableFuture<Contact>> acks = new ArrayList<>();
+	  for (int edit = 1; edit <= 3; edit++) {
+		contact.setLastName("Coalesced-" + edit);
+		acks.add(writeBehind.submit(contact));
+	  }
+
+	  // the queue keeps its own copy, neither the submitted nor the handed out contact reaches it
+	  contact.setLastName("Edited-after-submit");
+	  Contact queued = writeBehind.pending(contact.getId()).get();
+	  assertNotSame(contact, queued);
+	  assertEquals("Coalesced-3", queued.getLastName());
+	  queued.setLastName("Edited-in-editor");
+
+	  assertSame(acks.get(0), acks.get(2));
+	  assertEquals("Coalesced-3", acks.get(0).get(10, TimeUnit.SECONDS).getLastName());
+	  assertEquals("Coalesced-3", contactService.findById(contact.getId()).get().getLastName());
+	  assertFalse(writeBehind.pending(contact.getId()).isPresent());
+	} finally {
+	  writeBehind.shutdown();
+	}
+  }
+
+  @Test
+  void rejectsWhenFullAndDrainsOnShutdown() throws Exception {
+	Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+	// lingers far longer than the test, only shutdown flushes
+	ContactWriteBehind writeBehind = new ContactWriteBehind(contactService, true, 3, 50, 60_000, 50);
+	long contacts = contactService.count();
+	List<CompletableFuture<Contact>> acks = new ArrayList<>();
+	for (int i = 0; i < 3; i++) {
+	  Contact contact = new Contact();
+	  contact.setFirstName("Queued");
+	  contact.setLastName("Contact-" + i);
+	  acks.add(writeBehind.submit(contact));
+	}
+
+	assertThrows(RejectedExecutionException.class, () -> writeBehind.submit(new Contact()));
+	assertEquals(3, writeBehind.size());
+	assertFalse(acks.get(0).isDone());
+
+	statistics.clear();
+	writeBehind.shutdown();
+
+	assertEquals(1, statistics.getTransactionCount(), "the queued saves should be written in one transaction");
+	assertEquals(contacts + 3, contactService.count());
+	assertThrows(RejectedExecutionException.class, () -> writeBehind.submit(new Contact()));
+	for (CompletableFuture<Contact> ack : acks) {
+	  assertTrue(ack.isDone());
+	  contactService.delete(ack.get());
+	}
+  }
+}
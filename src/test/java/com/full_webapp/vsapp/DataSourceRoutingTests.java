@@ -0,0 +1,81 @@
+package com.full_webapp.vsapp;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/*
+ * Two H2 databases stand in for primary and replica, "replication" is a script copy taken in setUp.
+ */
+@SpringBootTest(properties = {
+	  "spring.datasource.url=jdbc:h2:mem:vsapp-primary;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+	  "custom.value.datasource.replica.url=" + DataSourceRoutingTests.REPLICA_URL,
+	  "custom.value.datasource.replica.max-lag-millis=300",
+	  "custom.value.search.trigram-index=false"})
+class DataSourceRoutingTests {
+  static final String REPLICA_URL = "jdbc:h2:mem:vsapp-replica;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE";
+
+  @Autowired
+  private ContactService contactService;
+
+  @Autowired
+  private ReadYourWrites readYourWrites;
+
+  @Autowired
+  private ReplicaPools replicaPools;
+
+  @Autowired
+  private DataSource dataSource;
+
+  private JdbcTemplate primary;
+
+  @BeforeEach
+  void setUp() {
+	primary = new JdbcTemplate(replicaPools.getPrimary());
+	JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+	replica.execute("drop all objects");
+	primary.queryForList("script nopasswords nosettings", String.class).forEach(replica::execute);
+  }
+
+  @Test
+  void readOnlyQueriesUseReplica() {
+	long replicated = contactService.count();
+	primary.update("insert into contact (id, first_name, last_name, email) values (2000000000, 'Lag', 'Behind', 'lag@replica.test')");
+
+	assertEquals(replicated, contactService.count());
+	assertEquals(0, contactService.count("lag@replica.test"));
+	assertEquals(replicated + 1, (long) primary.queryForObject("select count(*) from contact", Long.class));
+  }
+
+  @Test
+  void sessionReadsItsOwnWritesUntilLagWindowPasses() throws InterruptedException {
+	long replicated = contactService.count();
+	ReadYourWrites.Marker marker = new ReadYourWrites.Marker();
+	Contact contact = new Contact();
+	contact.setEmail("own@replica.test");
+	readYourWrites.within(marker, () -> contactService.save(contact));
+
+	assertEquals(replicated + 1, (long) readYourWrites.within(marker, contactService::count));
+	assertEquals(replicated, contactService.count());
+
+	Thread.sleep(400);
+	assertEquals(replicated, (long) readYourWrites.within(marker, contactService::count));
+  }
+
+  @Test
+  void connectionsOutsideTransactionsDoNotPinSession() {
+	ReadYourWrites.Marker marker = new ReadYourWrites.Marker();
+	JdbcTemplate routed = new JdbcTemplate(dataSource);
+	readYourWrites.within(marker, () -> routed.queryForObject("select count(*) from contact", Long.class));
+
+	assertFalse(readYourWrites.within(marker, readYourWrites::pinnedToPrimary));
+  }
+}
@@ -0,0 +1,33 @@
+package com.full_webapp.vsapp;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * The fast-start profile expects an existing schema, here Hibernate still creates it in a fresh database.
+ */
+@SpringBootTest(properties = {
+	  "spring.datasource.url=jdbc:h2:mem:vsapp-fast-start;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+	  "spring.jpa.hibernate.ddl-auto=create-drop"})
+@ActiveProfiles("fast-start")
+class FastStartProfileTests {
+
+  @Autowired
+  private ConfigurableApplicationContext context;
+
+  @Test
+  void createsBeansOnFirstUse() {
+	assertTrue(context.getBeanFactory().getBeanDefinition("contactImportService").isLazyInit());
+	assertFalse(context.getBeanFactory().containsSingleton("contactImportService"));
+
+	assertEquals(0, context.getBean(ContactService.class).count());
+	assertTrue(context.getBeanFactory().containsSingleton("contactService"));
+  }
+}
@@ -0,0 +1,162 @@
+package com.full_webapp.vsapp;
+
+import com.vaadin.flow.component.ComponentUtil;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.internal.PendingJavaScriptInvocation;
+import com.vaadin.flow.internal.ConstantPool;
+import com.vaadin.flow.internal.JsonCodec;
+import com.vaadin.flow.internal.StateTree;
+import com.vaadin.flow.server.VaadinSession;
+import elemental.json.JsonValue;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalAnswers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class ListViewTests {
+
+  @Autowired
+  private ContactService contactService;
+
+  @Autowired
+  private CompanyService companyService;
+
+  @Autowired
+  private ContactBroadcaster broadcaster;
+
+  @Autowired
+  private ContactQueryExecutor queryExecutor;
+
+  @Autowired
+  private ContactWriteBehind writeBehind;
+
+  @Autowired
+  private VaadinMetrics vaadinMetrics;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  private Statistics statistics;
+  private StatementBudget budget;
+  private UI ui;
+  private ListView view;
+
+  @BeforeEach
+  void setUp() throws Exception {
+	statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+	budget = new StatementBudget(entityManagerFactory);
+
+	VaadinSession session = TestSessions.session();
+	ui = TestSessions.attach(new UI(), session);
+	UI.setCurrent(ui);
+	VaadinSession.setCurrent(session);
+
+	view = new ListView(contactService, companyService, broadcaster, queryExecutor, writeBehind, vaadinMetrics);
+	ui.add(view);
+	view.pendingLoad.get();
+	view.grid.getDataCommunicator().setRequestedRange(0, 50);
+	roundTrip();
+  }
+
+  @AfterEach
+  void tearDown() {
+	UI.setCurrent(null);
+	VaadinSession.setCurrent(null);
+  }
+
+  @Test
+  void editRefreshesSingleRow() {
+	Contact contact = contactService.findById(contactService.fetch(null, 0, 1, Sort.unsorted()).get(0).getId()).get();
+
+	statistics.clear();
+	view.grid.getDataProvider().refreshAll();
+	long fullPayload = roundTrip();
+	long fullStatements = statistics.getPrepareStatementCount();
+
+	contact.setLastName(contact.getLastName() + "-edited");
+	// merge finds the row in the second-level cache, so the update is the only statement
+	long editPayload = budget.atMost(1, "edit", () -> {
+	  ComponentUtil.fireEvent(view.form, new ContactForm.SaveEvent(view.form, contact));
+	  return roundTrip();
+	});
+	long editStatements = statistics.getPrepareStatementCount();
+
+	assertTrue(editStatements < fullStatements, "edit should not re-run the grid count and page queries");
+	assertTrue(editPayload * 2 < fullPayload, "edit should resend a single row");
+  }
+
+  @Test
+  void failedSaveKeepsEditorOpen() {
+	ContactRow row = contactService.fetch(null, 0, 1, Sort.unsorted()).get(0);
+	view.grid.asSingleSelect().setValue(row);
+	assertTrue(view.form.isVisible());
+
+	Contact contact = contactService.findById(row.getId()).get();
+	String lastName = contact.getLastName();
+	contact.setLastName(lastName + "-never-saved");
+	// an unsaved company makes the write fail
+	contact.setCompany(new Company("Unsaved company"));
+	ComponentUtil.fireEvent(view.form, new ContactForm.SaveEvent(view.form, contact));
+
+	assertTrue(view.form.isVisible(), "the editor should stay open with the unsaved changes");
+	assertEquals(lastName, contactService.findById(row.getId()).get().getLastName());
+  }
+
+  @Test
+  void failedLoadLetsTheGridQuery() throws Exception {
+	ContactService failing = Mockito.mock(ContactService.class, AdditionalAnswers.delegatesTo(contactService));
+	CountDownLatch constructed = new CountDownLatch(1);
+	Mockito.doAnswer(invocation -> {
+	  constructed.await(10, TimeUnit.SECONDS);
+	  throw new IllegalStateException("database down");
+	}).doAnswer(AdditionalAnswers.delegatesTo(contactService)).when(failing).count(Mockito.anyString());
+
+	ListView failed = new ListView(failing, companyService, broadcaster, queryExecutor, writeBehind, vaadinMetrics);
+	ui.add(failed);
+	Future<?> load = failed.pendingLoad;
+	constructed.countDown();
+	load.get(10, TimeUnit.SECONDS);
+	assertFalse(failed.loadingIndicator.isVisible());
+
+	failed.grid.getDataCommunicator().setRequestedRange(0, 50);
+	roundTrip();
+	Mockito.verify(failing, Mockito.times(2)).count(Mockito.anyString());
+  }
+
+  // size of the JSON the next UIDL response would carry for state changes and grid data calls
+  private long roundTrip() {
+	StateTree stateTree = ui.getInternals().getStateTree();
+	stateTree.runExecutionsBeforeClientResponse();
+	AtomicLong bytes = new AtomicLong();
+	ConstantPool constantPool = new ConstantPool();
+	stateTree.collectChanges(change -> {
+	  JsonValue json = change.toJson(constantPool);
+	  if (json != null) {
+		bytes.addAndGet(json.toJson().length());
+	  }
+	});
+	for (PendingJavaScriptInvocation invocation : ui.getInternals().dumpPendingJavaScriptInvocations()) {
+	  bytes.addAndGet(invocation.getInvocation().getExpression().length());
+	  invocation.getInvocation().getParameters()
+			.forEach(parameter -> bytes.addAndGet(parameter == null ? 4 : JsonCodec.encodeWithTypeInfo(parameter).toJson().length()));
+	}
+	return bytes.get();
+  }
+}
@@ -0,0 +1,103 @@
+package com.full_webapp.vsapp;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class LoginCacheTests {
+
+  @Autowired
+  private DaoAuthenticationProvider authenticationProvider;
+
+  @Autowired
+  private UserAccountRepository userAccountRepository;
+
+  @Autowired
+  private PasswordEncoder passwordEncoder;
+
+  @Autowired
+  private UserCache userCache;
+
+  private final PasswordEncoder delegate = Mockito.spy(PasswordEncoderFactories.createDelegatingPasswordEncoder());
+  private final CachingPasswordEncoder encoder = new CachingPasswordEncoder(delegate, 100, 60);
+
+  @Test
+  void verifiedPasswordSkipsDelegate() {
+	String hash = encoder.encode("secret");
+
+	assertTrue(encoder.matches("secret", hash));
+	assertTrue(encoder.matches("secret", hash));
+	Mockito.verify(delegate, Mockito.times(1)).matches(Mockito.any(), Mockito.anyString());
+  }
+
+  @Test
+  void wrongPasswordIsNeverCached() {
+	String hash = encoder.encode("secret");
+
+	assertFalse(encoder.matches("wrong", hash));
+	assertFalse(encoder.matches("wrong", hash));
+	assertTrue(encoder.matches("secret", hash));
+	Mockito.verify(delegate, Mockito.times(3)).matches(Mockito.any(), Mockito.anyString());
+	assertEquals(0, encoder.stats().hitCount());
+  }
+
+  @Test
+  void changedHashMissesCache() {
+	String hash = encoder.encode("secret");
+	String changed = encoder.encode("secret");
+	assertNotEquals(hash, changed);
+
+	assertTrue(encoder.matches("secret", hash));
+	assertTrue(encoder.matches("secret", changed));
+	Mockito.verify(delegate, Mockito.times(2)).matches(Mockito.any(), Mockito.anyString());
+  }
+
+  // ProviderManager erases the credentials of the user it hands out, the cached entry must keep them
+  @Test
+  void userCacheKeepsItsOwnCopy() {
+	CaffeineUserCache users = new CaffeineUserCache(100, 60);
+	User user = (User) User.withUsername("copied").password("{noop}secret").roles("USER").build();
+	users.putUserInCache(user);
+	user.eraseCredentials();
+
+	User cached = (User) users.getUserFromCache("copied");
+	assertEquals("{noop}secret", cached.getPassword());
+	cached.eraseCredentials();
+	assertEquals("{noop}secret", users.getUserFromCache("copied").getPassword());
+  }
+
+  @Test
+  void legacyHashIsRehashedOnLogin() {
+	UserAccount account = userAccountRepository.save(new UserAccount("legacy", "{noop}legacy-secret", "USER"));
+	try {
+	  authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken("legacy", "legacy-secret"));
+
+	  String rehashed = userAccountRepository.findByUsername("legacy").get().getPasswordHash();
+	  assertTrue(rehashed.startsWith("{bcrypt}"), rehashed);
+	  assertTrue(passwordEncoder.matches("legacy-secret", rehashed));
+	  assertNull(userCache.getUserFromCache("legacy"), "the user with the old hash should be evicted");
+
+	  UserDetails user = (UserDetails) authenticationProvider
+			.authenticate(new UsernamePasswordAuthenticationToken("legacy", "legacy-secret")).getPrincipal();
+	  assertEquals("legacy", user.getUsername());
+	} finally {
+	  userAccountRepository.delete(account);
+	  userCache.removeUserFromCache("legacy");
+	}
+  }
+}
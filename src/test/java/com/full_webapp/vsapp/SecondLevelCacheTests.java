@@ -0,0 +1,106 @@
+package com.full_webapp.vsapp;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class SecondLevelCacheTests {
+
+  @Autowired
+  private ContactService contactService;
+
+  @Autowired
+  private ContactRepository contactRepository;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  private StatementBudget budget;
+
+  @BeforeEach
+  void setUp() {
+	budget = new StatementBudget(entityManagerFactory);
+	entityManagerFactory.getCache().evictAll();
+  }
+
+  @Test
+  void repeatedEditorLoadSkipsDatabase() {
+	Long id = contactService.fetch(null, 0, 1, Sort.unsorted()).get(0).getId();
+	Contact first = budget.atMost(1, "first load", () -> contactService.findById(id).get());
+
+	Contact cached = budget.atMost(0, "cached load", () -> contactService.findById(id).get());
+
+	assertNotNull(cached.getCompany());
+	assertEquals(first.getCompany().getName(), cached.getCompany().getName());
+	assertTrue(meterRegistry.get("cache.gets").tag("cache", "hibernate.contact").tag("result", "hit").functionCounter().count() > 0);
+  }
+
+  @Test
+  void repeatedSearchSkipsDatabaseUntilContactsChange() {
+	List<Contact> first = contactRepository.search("an");
+	assertFalse(first.isEmpty());
+
+	List<Contact> cached = budget.atMost(0, "cached search", () -> contactRepository.search("an"));
+	assertEquals(first, cached);
+
+	Contact contact = contactService.findById(first.get(0).getId()).get();
+	contact.setEmail("cached." + contact.getEmail());
+	contactService.save(contact);
+
+	Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+	statistics.clear();
+	contactRepository.search("an");
+	assertEquals(1, statistics.getQueryCacheMissCount(), "a contact write should invalidate cached searches");
+	assertTrue(meterRegistry.get("cache.gets").tag("cache", "hibernate.contact-search").tag("result", "hit").functionCounter().count() > 0);
+  }
+
+  @Test
+  void repeatedGridWindowsSkipDatabaseUntilContactsChange() {
+	Sort sort = Sort.by("lastName");
+	List<Long> ids = contactService.fetch(null, 0, 50, Sort.by("id")).stream().map(ContactRow::getId).collect(Collectors.toList());
+	List<Supplier<Object>> windows = Arrays.asList(
+		  () -> contactService.fetch(null, 10, 20, sort),
+		  () -> contactRepository.findRowsByIdIn(ids, new OffsetPageRequest(5, 20, sort)),
+		  () -> contactRepository.searchRows("an", new OffsetPageRequest(0, 20, sort)),
+		  () -> contactRepository.countSearch("an"),
+		  () -> contactRepository.seek(KeysetCursor.first(sort), 20),
+		  () -> contactRepository.seekIn(KeysetCursor.last(sort), ids, 20),
+		  () -> contactRepository.seekSearch(KeysetCursor.first(sort), "an", 20));
+	for (Supplier<Object> window : windows) {
+	  Object first = window.get();
+	  assertEquals(first, budget.atMost(0, "cached grid window", window));
+	}
+
+	Contact contact = contactService.findById(ids.get(0)).get();
+	contact.setLastName(contact.getLastName() + "-moved");
+	contactService.save(contact);
+
+	Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+	statistics.clear();
+	windows.forEach(Supplier::get);
+	// keyset pages may read the null segment with a second query, so only hits are counted exactly
+	assertEquals(0, statistics.getQueryCacheHitCount(), "a contact write should invalidate cached windows");
+	assertTrue(statistics.getQueryCacheMissCount() >= windows.size());
+	assertTrue(meterRegistry.get("cache.gets").tag("cache", "hibernate.contact-rows").tag("result", "hit").functionCounter().count() > 0);
+  }
+}
@@ -0,0 +1,99 @@
+package com.full_webapp.vsapp;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.server.VaadinSession;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class SessionMemoryMonitorTests {
+
+  @Autowired
+  private ContactService contactService;
+
+  @Autowired
+  private CompanyService companyService;
+
+  @Autowired
+  private ContactBroadcaster broadcaster;
+
+  @Autowired
+  private ContactQueryExecutor queryExecutor;
+
+  @Autowired
+  private ContactWriteBehind writeBehind;
+
+  @Autowired
+  private VaadinMetrics vaadinMetrics;
+
+  @Autowired
+  private CompanyCache companyCache;
+
+  @Autowired
+  private SessionMemoryMonitor monitor;
+
+  @Autowired
+  private MeterRegistry registry;
+
+  private VaadinSession session;
+  private UI ui;
+
+  @BeforeEach
+  void setUp() throws Exception {
+	session = TestSessions.session();
+	ui = TestSessions.attach(new UI() {
+	  @Override
+	  public int getUIId() {
+		return 1;
+	  }
+	}, session);
+	session.addUI(ui);
+	UI.setCurrent(ui);
+	VaadinSession.setCurrent(session);
+
+	ListView view = new ListView(contactService, companyService, broadcaster, queryExecutor, writeBehind, vaadinMetrics);
+	ui.add(view);
+	view.pendingLoad.get();
+	monitor.track(session);
+  }
+
+  @AfterEach
+  void tearDown() {
+	UI.setCurrent(null);
+	VaadinSession.setCurrent(null);
+  }
+
+  @Test
+  void measuresGridAndBinder() {
+	SessionFootprint footprint = SessionMemoryMonitor.measure(session);
+
+	assertEquals(1, footprint.getUis().size());
+	assertTrue(footprint.getStateNodes() > 0);
+	assertTrue(footprint.getGridItems() > 0);
+	assertEquals(5, footprint.getBoundFields());
+	assertTrue(footprint.getEstimatedBytes() > 0);
+  }
+
+  @Test
+  void pressureShrinksCachesAndEvictsClosingUis() {
+	companyCache.findAll();
+	long misses = companyCache.stats().missCount();
+	double pressure = registry.counter("vsapp.memory.pressure").count();
+	ui.close();
+
+	monitor.relievePressure();
+
+	assertTrue(session.getUIs().isEmpty());
+	assertEquals(pressure + 1, registry.counter("vsapp.memory.pressure").count());
+	companyCache.findAll();
+	assertEquals(misses + 1, companyCache.stats().missCount());
+  }
+}
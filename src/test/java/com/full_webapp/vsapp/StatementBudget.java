@@ -0,0 +1,42 @@
+package com.full_webapp.vsapp;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/*
+ * Counts the statements Hibernate prepares during one call and fails the test when the call needs more
+ * than its budget, which is how an N+1 shows up. Needs hibernate.generate_statistics in the test properties.
+ */
+final class StatementBudget {
+  private final Statistics statistics;
+
+  StatementBudget(EntityManagerFactory entityManagerFactory) {
+	this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+	if (!statistics.isStatisticsEnabled()) {
+	  throw new IllegalStateException("Hibernate statistics are disabled");
+	}
+  }
+
+  <T> T atMost(long budget, String call, Supplier<T> work) {
+	statistics.clear();
+	T result = work.get();
+	long statements = statistics.getPrepareStatementCount();
+	if (statements > budget) {
+	  fail(String.format("%s prepared %d statements, budget is %d (entities loaded: %d, collections: %d)",
+			call, statements, budget, statistics.getEntityLoadCount(), statistics.getCollectionLoadCount()));
+	}
+	return result;
+  }
+
+  void atMost(long budget, String call, Runnable work) {
+	atMost(budget, call, () -> {
+	  work.run();
+	  return null;
+	});
+  }
+}
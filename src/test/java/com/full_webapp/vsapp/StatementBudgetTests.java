@@ -0,0 +1,73 @@
+package com.full_webapp.vsapp;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/*
+ * Statement budgets of the contact read paths, every row's company included.
+ */
+@SpringBootTest
+class StatementBudgetTests {
+
+  @Autowired
+  private ContactService contactService;
+
+  @Autowired
+  private CompanyService companyService;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  private StatementBudget budget;
+
+  @BeforeEach
+  void setUp() {
+	budget = new StatementBudget(entityManagerFactory);
+  }
+
+  @Test
+  void gridWindow() {
+	List<ContactRow> rows = budget.atMost(1, "fetch", () -> contactService.fetch(null, 0, 50, Sort.by("lastName")));
+	assertFalse(rows.isEmpty());
+	budget.atMost(1, "count", () -> contactService.count(null));
+	Contact contact = budget.atMost(1, "editor load", () -> contactService.findById(rows.get(0).getId()).get());
+	budget.atMost(0, "editor company", () -> contact.getCompany().getName());
+  }
+
+  @Test
+  void filteredReads() {
+	budget.atMost(1, "fetch filtered", () -> contactService.fetch("a", 0, 50, Sort.unsorted()));
+	budget.atMost(1, "findAll filtered", () -> contactService.findAll("a"));
+	budget.atMost(1, "findAll", () -> contactService.findAll());
+  }
+
+  @Test
+  void keysetPage() {
+	budget.atMost(2, "seek", () -> contactService.seek(null, KeysetCursor.first(Sort.by("status")), 50));
+  }
+
+  @Test
+  void export() {
+	budget.atMost(1, "export", () -> {
+	  try {
+		contactService.export(null, ExportFormat.CSV, new ByteArrayOutputStream());
+	  } catch (Exception e) {
+		throw new IllegalStateException(e);
+	  }
+	});
+  }
+
+  @Test
+  void companyStats() {
+	budget.atMost(1, "getStats", () -> companyService.getStats());
+  }
+}
@@ -0,0 +1,51 @@
+package com.full_webapp.vsapp;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.function.DeploymentConfiguration;
+import com.vaadin.flow.server.Command;
+import com.vaadin.flow.server.VaadinService;
+import com.vaadin.flow.server.VaadinSession;
+import org.mockito.Mockito;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Vaadin sessions and UIs for tests without a servlet. The session counts as locked by the caller, and
+ * access runs the command right away, as if the session lock was free.
+ */
+final class TestSessions {
+
+  private TestSessions() {
+  }
+
+  static VaadinSession session() {
+	VaadinService service = Mockito.mock(VaadinService.class);
+	Mockito.when(service.getDeploymentConfiguration()).thenReturn(Mockito.mock(DeploymentConfiguration.class));
+	Mockito.when(service.accessSession(Mockito.any(), Mockito.any())).thenAnswer(invocation -> {
+	  invocation.getArgument(1, Command.class).execute();
+	  return null;
+	});
+	Lock lock = new ReentrantLock();
+	return new VaadinSession(service) {
+	  @Override
+	  public boolean hasLock() {
+		return true;
+	  }
+
+	  @Override
+	  public Lock getLockInstance() {
+		return lock;
+	  }
+	};
+  }
+
+  static <T extends UI> T attach(T ui, VaadinSession session) {
+	ui.getInternals().setSession(session);
+	return ui;
+  }
+
+  static UI attachedUi() {
+	return attach(new UI(), session());
+  }
+}
@@ -0,0 +1,54 @@
+package com.full_webapp.vsapp;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class UserStoreTests {
+
+  @Autowired
+  private UserAccountRepository userAccountRepository;
+
+  @Autowired
+  private PasswordEncoder passwordEncoder;
+
+  @Autowired
+  private UserCache userCache;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Test
+  void noAccountsWithoutConfiguredCredentials() {
+	assertEquals(0, userAccountRepository.count());
+	assertFalse(userAccountRepository.findByUsername("user").isPresent());
+	assertFalse(userAccountRepository.findByUsername("admin").isPresent());
+  }
+
+  @Test
+  void bootstrapsConfiguredAccountsOnce() {
+	JpaUserDetailsService users = new JpaUserDetailsService(userAccountRepository, passwordEncoder, userCache,
+		  new TransactionTemplate(transactionManager), "demo", "demo-from-env", "ops", "s3cret-from-env");
+	users.populateDefaultUser();
+	users.populateDefaultUser();
+
+	UserAccount user = userAccountRepository.findByUsername("demo").get();
+	assertEquals(UserStoreConfiguration.USER_ROLE, user.getRole());
+	assertTrue(passwordEncoder.matches("demo-from-env", user.getPasswordHash()));
+	UserAccount admin = userAccountRepository.findByUsername("ops").get();
+	assertEquals(MemoryView.ROLE, admin.getRole());
+	assertTrue(passwordEncoder.matches("s3cret-from-env", admin.getPasswordHash()));
+	assertEquals(2, userAccountRepository.count());
+	userAccountRepository.delete(user);
+	userAccountRepository.delete(admin);
+  }
+}